@@ -1,13 +1,19 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminInterceptor;
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.RateLimitInterceptor;
+import com.hmdp.utils.RateLimiter;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
+import java.util.HashSet;
+import java.util.List;
 
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
@@ -15,6 +21,13 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource // 依赖注入
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private RateLimiter rateLimiter;
+
+    // 管理员用户id，逗号分隔，可以调用标注了 @AdminOnly 的接口
+    @Value("${hmdp.admin.user-ids:}")
+    private List<Long> adminIds;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         // token有效期刷新拦截器
@@ -24,11 +37,15 @@ public class MvcConfig implements WebMvcConfigurer {
                 .excludePathPatterns(
                         "/shop/**",
                         "/voucher/**",
-                        "/shop-type/**",
+                        "/shop-type/list",
                         "/upload/**",
                         "/blog/hot",
                         "/user/code",
                         "/user/login"
                 ).order(1);
+        // 管理员拦截器，检查标注了 @AdminOnly 的接口，登录排除的路径也会检查
+        registry.addInterceptor(new AdminInterceptor(new HashSet<>(adminIds))).addPathPatterns("/**").order(2);
+        // 限流拦截器，需要在 token 刷新之后才能按用户限流
+        registry.addInterceptor(new RateLimitInterceptor(rateLimiter)).addPathPatterns("/**").order(3);
     }
 }
@@ -1,47 +1,56 @@
 package com.hmdp.config;
 
+import cn.hutool.core.util.StrUtil;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
-import org.redisson.config.SingleServerConfig;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class RedissonConfig {
 
+    // 节点1与 spring.redis 相同
+    @Value("${spring.redis.host}")
+    private String host;
+
+    @Value("${spring.redis.port:6379}")
+    private int port;
+
+    @Value("${spring.redis.password:}")
+    private String password;
+
+    @Value("${hmdp.redisson.node2-address:redis://8.152.211.25:6380}")
+    private String node2Address;
+
+    @Value("${hmdp.redisson.node3-address:redis://8.152.211.25:6381}")
+    private String node3Address;
+
     // redis 集群-节点1
     @Bean
     public RedissonClient redissonClient(){
-        // 配置
-        Config config = new Config();
-        config.useSingleServer()
-                .setAddress("redis://8.152.211.25:6379")
-                .setPassword("linux369");
-        // 创建 RedissonClient 对象
-        return Redisson.create(config);
+        return create("redis://" + host + ":" + port);
     }
 
     // redis 集群-节点2
     @Bean
     public RedissonClient redissonClient2(){
-        // 配置
-        Config config = new Config();
-        config.useSingleServer()
-                .setAddress("redis://8.152.211.25:6380")
-                .setPassword("linux369");
-        // 创建 RedissonClient 对象
-        return Redisson.create(config);
+        return create(node2Address);
     }
 
     // redis 集群-节点3
     @Bean
     public RedissonClient redissonClient3(){
-        // 配置
+        return create(node3Address);
+    }
+
+    private RedissonClient create(String address){
+        // 配置，没有密码时不能传空字符串，否则会发送 AUTH
         Config config = new Config();
         config.useSingleServer()
-                .setAddress("redis://8.152.211.25:6381")
-                .setPassword("linux369");
+                .setAddress(address)
+                .setPassword(StrUtil.isBlank(password) ? null : password);
         // 创建 RedissonClient 对象
         return Redisson.create(config);
     }
@@ -0,0 +1,73 @@
+package com.hmdp.config;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.time.Duration;
+
+/**
+ * 下单消息队列消费者专用的 Redis 连接
+ * XREADGROUP BLOCK 会占用连接直到超时，使用独立的连接池，不占用请求线程共用的 spring.redis.lettuce.pool
+ * 连接工厂不注册为 bean，避免与自动配置的 RedisConnectionFactory 冲突
+ */
+@Configuration
+public class StreamRedisConfig implements DisposableBean {
+
+    // 消费者线程数 + 1
+    @Value("${hmdp.seckill.consumer.pool-size:2}")
+    private int poolSize;
+
+    @Value("${hmdp.seckill.consumer.block-ms:2000}")
+    private long blockMillis;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    @Bean
+    public RedisTemplate<String, String> streamRedisTemplate(RedisProperties properties){
+        // 1. 与 spring.redis 相同的 Redis
+        RedisStandaloneConfiguration server = new RedisStandaloneConfiguration(properties.getHost(), properties.getPort());
+        server.setDatabase(properties.getDatabase());
+        server.setPassword(RedisPassword.of(properties.getPassword()));
+        // 2. 独立的连接池，命令超时必须长于阻塞读取的时间
+        GenericObjectPoolConfig<Object> pool = new GenericObjectPoolConfig<>();
+        pool.setMaxTotal(poolSize);
+        pool.setMaxIdle(poolSize);
+        pool.setMinIdle(1);
+        Duration timeout = Duration.ofMillis(blockMillis + 1000);
+        if(properties.getTimeout() != null && properties.getTimeout().compareTo(timeout) > 0){
+            timeout = properties.getTimeout();
+        }
+        LettucePoolingClientConfiguration client = LettucePoolingClientConfiguration.builder()
+                .poolConfig(pool)
+                .commandTimeout(timeout)
+                .build();
+        connectionFactory = new LettuceConnectionFactory(server, client);
+        connectionFactory.afterPropertiesSet();
+        // 3. key、hash 都按字符串序列化，与 StringRedisTemplate 一致
+        RedisTemplate<String, String> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(StringRedisSerializer.UTF_8);
+        template.setValueSerializer(StringRedisSerializer.UTF_8);
+        template.setHashKeySerializer(StringRedisSerializer.UTF_8);
+        template.setHashValueSerializer(StringRedisSerializer.UTF_8);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @Override
+    public void destroy() {
+        if(connectionFactory != null){
+            connectionFactory.destroy();
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.hmdp.controller;
 
 
-import org.springframework.web.bind.annotation.RequestMapping;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.BlogComments;
+import com.hmdp.service.IBlogCommentsService;
+import org.springframework.web.bind.annotation.*;
 
-import org.springframework.web.bind.annotation.RestController;
+import javax.annotation.Resource;
 
 /**
  * <p>
@@ -17,4 +20,42 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/blog-comments")
 public class BlogCommentsController {
 
+    @Resource
+    private IBlogCommentsService blogCommentsService;
+
+    /**
+     * 发表评论或回复
+     * @param comment 评论内容，parentId 为 0 表示一级评论
+     * @return 评论id
+     */
+    @PostMapping
+    public Result saveComment(@RequestBody BlogComments comment) {
+        return blogCommentsService.saveComment(comment);
+    }
+
+    /**
+     * 游标分页查询 blog 的一级评论，按时间倒序
+     * @param blogId 博客id
+     * @param cursor 上一页返回的 nextCursor，第一页不传
+     */
+    @GetMapping("/of/blog")
+    public Result queryCommentsOfBlog(
+            @RequestParam("blogId") Long blogId,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return blogCommentsService.queryCommentsOfBlog(blogId, cursor);
+    }
+
+    /**
+     * 游标分页查询一级评论下的回复，按时间正序
+     * @param parentId 一级评论id
+     * @param cursor 上一页返回的 nextCursor，第一页不传
+     */
+    @GetMapping("/replies")
+    public Result queryReplies(
+            @RequestParam("parentId") Long parentId,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return blogCommentsService.queryReplies(parentId, cursor);
+    }
 }
@@ -86,6 +86,28 @@ public class BlogController {
         return Result.ok(records);
     }
 
+    /**
+     * 游标分页查询当前用户的博客，深分页与第一页代价相同
+     * @param cursor 上一页返回的 nextCursor，第一页不传
+     */
+    @GetMapping("/of/me/cursor")
+    public Result queryMyBlogByCursor(@RequestParam(value = "cursor", required = false) String cursor) {
+        UserDTO user = UserHolder.getUser();
+        return blogService.queryBlogOfUserByCursor(user.getId(), cursor);
+    }
+
+    /**
+     * 游标分页查询指定用户的博客
+     * @param cursor 上一页返回的 nextCursor，第一页不传
+     */
+    @GetMapping("/of/user/cursor")
+    public Result queryBlogByUserIdWithCursor(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam("id") Long id
+    ){
+        return blogService.queryBlogOfUserByCursor(id, cursor);
+    }
+
     @GetMapping("/of/follow")
     public Result queryBlogOfFollow(
             @RequestParam("lastId") Long max,
@@ -0,0 +1,34 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.AdminOnly;
+import com.hmdp.utils.HotKeyCache;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存运维接口
+ * </p>
+ */
+@AdminOnly
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private HotKeyCache hotKeyCache;
+
+    /**
+     * 查询本实例上一个窗口的 top-K 热点 key
+     * @return key、估计访问次数、是否已晋升到本地缓存
+     */
+    @GetMapping("/hot-keys")
+    public Result queryHotKeys() {
+        return Result.ok(hotKeyCache.topKeys());
+    }
+}
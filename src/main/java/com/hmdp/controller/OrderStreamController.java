@@ -0,0 +1,63 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.AdminOnly;
+import com.hmdp.utils.SeckillOrderStream;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 下单消息队列运维接口
+ * </p>
+ */
+@AdminOnly
+@RestController
+@RequestMapping("/order-stream")
+public class OrderStreamController {
+
+    @Resource
+    private SeckillOrderStream seckillOrderStream;
+
+    /**
+     * 积压指标：队列长度、未确认数、最早消息的等待时间、死信数
+     */
+    @GetMapping("/metrics")
+    public Result queryMetrics() {
+        return Result.ok(seckillOrderStream.metrics());
+    }
+
+    /**
+     * 查看死信队列中最早的消息
+     */
+    @GetMapping("/dlq")
+    public Result queryDeadLetters(@RequestParam(value = "count", defaultValue = "20") Integer count) {
+        return Result.ok(seckillOrderStream.deadLetters(count));
+    }
+
+    /**
+     * 重放一条死信消息
+     */
+    @PostMapping("/dlq/replay/{id}")
+    public Result replay(@PathVariable("id") String id) {
+        if(!seckillOrderStream.replay(id)){
+            return Result.fail("消息不存在！");
+        }
+        return Result.ok();
+    }
+
+    /**
+     * 重放死信队列中最早的 count 条消息
+     */
+    @PostMapping("/dlq/replay")
+    public Result replayAll(@RequestParam(value = "count", defaultValue = "100") Integer count) {
+        return Result.ok(seckillOrderStream.replayAll(count));
+    }
+}
@@ -0,0 +1,33 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.AdminOnly;
+import com.hmdp.utils.RateLimiter;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 限流运维接口
+ * </p>
+ */
+@AdminOnly
+@RestController
+@RequestMapping("/rate-limit")
+public class RateLimitController {
+
+    @Resource
+    private RateLimiter rateLimiter;
+
+    /**
+     * 查询本实例各限流规则放行和拒绝的请求数
+     */
+    @GetMapping("/metrics")
+    public Result queryMetrics() {
+        return Result.ok(rateLimiter.metrics());
+    }
+}
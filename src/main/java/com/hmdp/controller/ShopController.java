@@ -1,12 +1,10 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.AdminOnly;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
@@ -41,12 +39,11 @@ public class ShopController {
      * @param shop 商铺数据
      * @return 商铺id
      */
+    @AdminOnly
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，并同步 GEO 数据
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -54,12 +51,24 @@ public class ShopController {
      * @param shop 商铺数据
      * @return 无
      */
+    @AdminOnly
     @PutMapping
     public Result updateShop(@RequestBody Shop shop) {
         // 写入数据库
         return shopService.update(shop);
     }
 
+    /**
+     * 删除商铺信息
+     * @param id 商铺id
+     * @return 无
+     */
+    @AdminOnly
+    @DeleteMapping("/{id}")
+    public Result deleteShop(@PathVariable("id") Long id) {
+        return shopService.deleteShop(id);
+    }
+
     /**
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
@@ -77,8 +86,68 @@ public class ShopController {
     }
 
     /**
-     * 根据商铺名称关键字分页查询商铺信息
-     * @param name 商铺名称关键字
+     * 附近搜索：在半径和均价范围内，按距离、评分、销量或均价排序分页
+     * @param typeId 商铺类型
+     * @param sortBy 排序方式：distance 由近到远、score 评分最高、sold 销量最高、price 均价最低
+     * @param radius 查询半径，单位：米，默认 5000
+     * @param minPrice 最低均价
+     * @param maxPrice 最高均价
+     * @param current 页码
+     * @return 商铺列表，distance 字段为距离（米）
+     */
+    @GetMapping("/of/type/search")
+    public Result searchShopByType(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam("x") Double x,
+            @RequestParam("y") Double y,
+            @RequestParam(value = "sortBy", defaultValue = "distance") String sortBy,
+            @RequestParam(value = "radius", required = false) Double radius,
+            @RequestParam(value = "minPrice", required = false) Long minPrice,
+            @RequestParam(value = "maxPrice", required = false) Long maxPrice,
+            @RequestParam(value = "current", defaultValue = "1") Integer current
+    ) {
+        return shopService.searchShopByType(typeId, x, y, sortBy, radius, minPrice, maxPrice, current);
+    }
+
+    /**
+     * 查询地图视野内的店铺，按网格聚合返回
+     * @param typeId 商铺类型，不传则查询所有类型
+     * @param minX 视野左下角经度
+     * @param minY 视野左下角纬度
+     * @param maxX 视野右上角经度
+     * @param maxY 视野右上角纬度
+     * @param zoom 地图缩放级别
+     * @return 聚合格子列表：店铺数、中心点、评分最高的店铺
+     */
+    @GetMapping("/viewport")
+    public Result queryShopByViewport(
+            @RequestParam(value = "typeId", required = false) Integer typeId,
+            @RequestParam("minX") Double minX,
+            @RequestParam("minY") Double minY,
+            @RequestParam("maxX") Double maxX,
+            @RequestParam("maxY") Double maxY,
+            @RequestParam("zoom") Integer zoom
+    ) {
+        return shopService.queryShopByViewport(typeId, minX, minY, maxX, maxY, zoom);
+    }
+
+    /**
+     * 根据商铺类型游标分页查询商铺信息（不按距离排序）
+     * @param typeId 商铺类型
+     * @param cursor 上一页返回的 nextCursor，第一页不传
+     * @return 商铺列表及下一页游标
+     */
+    @GetMapping("/of/type/cursor")
+    public Result queryShopByTypeWithCursor(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByTypeWithCursor(typeId, cursor);
+    }
+
+    /**
+     * 根据关键字分页查询商铺信息，匹配名称、商圈和地址，按相关度排序
+     * @param name 关键字
      * @param current 页码
      * @return 商铺列表
      */
@@ -87,11 +156,30 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByName(name, current);
+    }
+
+    /**
+     * 搜索框输入提示，支持名称前缀和拼音首字母前缀
+     * @param prefix 已输入的内容
+     * @return 店铺id、名称、商圈，按人气排序
+     */
+    @GetMapping("/suggest")
+    public Result suggestShop(@RequestParam(value = "prefix", defaultValue = "") String prefix) {
+        return shopService.suggestShop(prefix);
+    }
+
+    /**
+     * 根据商铺名称关键字游标分页查询商铺信息，不执行 COUNT 查询
+     * @param name 商铺名称关键字
+     * @param cursor 上一页返回的 nextCursor，第一页不传
+     * @return 商铺列表及下一页游标
+     */
+    @GetMapping("/of/name/cursor")
+    public Result queryShopByNameWithCursor(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByNameWithCursor(name, cursor);
     }
 }
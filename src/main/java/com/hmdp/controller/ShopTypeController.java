@@ -2,14 +2,19 @@ package com.hmdp.controller;
 
 
 import com.hmdp.dto.Result;
-import com.hmdp.entity.ShopType;
+import com.hmdp.dto.ShopTypeCatalog;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.AdminOnly;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.annotation.Resource;
-import java.util.List;
 
 /**
  * <p>
@@ -25,10 +30,29 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    /**
+     * 查询店铺类型列表，响应体在内存中预先序列化，带强 ETag，客户端缓存未过期时返回 304
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
-        List<ShopType> typeList = typeService
-                .query().orderByAsc("sort").list();
-        return Result.ok(typeList);
+    public ResponseEntity<byte[]> queryTypeList(WebRequest request) {
+        ShopTypeCatalog catalog = typeService.queryTypeCatalog();
+        // 请求头 If-None-Match 与当前 ETag 一致，返回 304，不返回响应体
+        if(request.checkNotModified(catalog.getEtag())){
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(catalog.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(catalog.getBody());
+    }
+
+    /**
+     * tb_shop_type 修改后调用，通知所有实例重新加载店铺类型
+     */
+    @AdminOnly
+    @PostMapping("refresh")
+    public Result refreshTypeList() {
+        return typeService.refreshTypeCatalog();
     }
 }
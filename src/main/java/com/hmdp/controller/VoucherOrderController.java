@@ -3,8 +3,11 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.RateLimit;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -26,7 +29,37 @@ public class VoucherOrderController {
     private IVoucherOrderService voucherOrderService;
 
     @PostMapping("seckill/{id}")
-    public Result seckillVoucher(@PathVariable("id") Long voucherId) {
-        return voucherOrderService.seckillVoucher(voucherId);
+    @RateLimit(name = "seckill", by = RateLimit.Dimension.USER, permits = 5)
+    @RateLimit(name = "seckill", by = RateLimit.Dimension.IP, permits = 50)
+    public Result seckillVoucher(@PathVariable("id") Long voucherId,
+                                 @RequestHeader(value = "seckill-token", required = false) String token) {
+        return voucherOrderService.seckillVoucher(voucherId, token);
+    }
+
+    /**
+     * 轮询异步下单的结果：queued 排队中，created 已创建，failed 下单失败
+     */
+    @GetMapping("status/{id}")
+    @RateLimit(name = "order-status", by = RateLimit.Dimension.USER, permits = 5)
+    public Result queryOrderStatus(@PathVariable("id") Long orderId) {
+        return voucherOrderService.queryOrderStatus(orderId);
+    }
+
+    /**
+     * 排队获取抢购资格，放行后返回抢购凭证，下单时放在请求头 seckill-token 中
+     */
+    @PostMapping("queue/{id}")
+    @RateLimit(name = "seckill-queue", by = RateLimit.Dimension.USER, permits = 5)
+    public Result joinSeckillQueue(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.joinSeckillQueue(voucherId);
+    }
+
+    /**
+     * 轮询排队状态
+     */
+    @GetMapping("queue/{id}")
+    @RateLimit(name = "seckill-queue", by = RateLimit.Dimension.USER, permits = 5)
+    public Result querySeckillQueue(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.querySeckillQueue(voucherId);
     }
 }
@@ -0,0 +1,17 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeckillQueueStatus {
+    // 0 已放行，1 排队中，2 已售罄，3 秒杀不存在或已结束，4 未排队
+    private Integer status;
+    // 排队中时前面还有多少人
+    private Long position;
+    // 已放行时的抢购凭证，下单时携带
+    private String token;
+}
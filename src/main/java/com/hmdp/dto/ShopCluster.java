@@ -0,0 +1,19 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.Shop;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopCluster {
+    // 格子内的店铺数
+    private Integer count;
+    // 格子内店铺坐标的中心点
+    private Double x;
+    private Double y;
+    // 格子内评分最高的店铺，评分相同时取销量高的
+    private Shop shop;
+}
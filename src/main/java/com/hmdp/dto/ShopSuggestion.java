@@ -0,0 +1,15 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopSuggestion {
+    private Long id;
+    private String name;
+    // 商圈，用于区分同名店铺
+    private String area;
+}
@@ -0,0 +1,20 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.ShopType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 店铺类型列表的不可变快照：类型列表、序列化好的响应体及其 ETag
+ */
+@Getter
+@AllArgsConstructor
+public class ShopTypeCatalog {
+    private final List<ShopType> types;
+    // Result.ok(types) 序列化后的 JSON
+    private final byte[] body;
+    // 响应体的 MD5，不带引号
+    private final String etag;
+}
@@ -25,4 +25,6 @@ public interface IBlogService extends IService<Blog> {
     Result saveBlog(Blog blog);
 
     Result queryBlogOfFollow(Long max, Integer offset);
+
+    Result queryBlogOfUserByCursor(Long userId, String cursor);
 }
@@ -16,7 +16,24 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    Result saveShop(Shop shop);
+
     Result update(Shop shop);
 
+    Result deleteShop(Long id);
+
     Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    Result searchShopByType(Integer typeId, Double x, Double y, String sortBy, Double radius,
+                            Long minPrice, Long maxPrice, Integer current);
+
+    Result queryShopByViewport(Integer typeId, Double minX, Double minY, Double maxX, Double maxY, Integer zoom);
+
+    Result queryShopByName(String name, Integer current);
+
+    Result suggestShop(String prefix);
+
+    Result queryShopByTypeWithCursor(Integer typeId, String cursor);
+
+    Result queryShopByNameWithCursor(String name, String cursor);
 }
@@ -1,5 +1,7 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeCatalog;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -13,4 +15,7 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IShopTypeService extends IService<ShopType> {
 
+    ShopTypeCatalog queryTypeCatalog();
+
+    Result refreshTypeCatalog();
 }
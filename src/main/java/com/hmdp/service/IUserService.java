@@ -3,9 +3,12 @@ package com.hmdp.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 
 import javax.servlet.http.HttpSession;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * <p>
@@ -24,4 +27,11 @@ public interface IUserService extends IService<User> {
     Result sign();
 
     Result signCount();
+
+    /**
+     * 批量查询用户公开信息（昵称、头像），优先走 Redis 缓存，未命中的部分一次性回源数据库
+     * @param ids 用户id集合
+     * @return 用户id -> UserDTO，不存在的用户不会出现在结果中
+     */
+    Map<Long, UserDTO> queryUserDTOByIds(Collection<Long> ids);
 }
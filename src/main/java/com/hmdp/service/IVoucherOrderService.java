@@ -14,7 +14,18 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IVoucherOrderService extends IService<VoucherOrder> {
 
-    Result seckillVoucher(Long voucherId);
+    // createVoucher 的结果：0 创建成功，1 重复下单，2 数据库库存不足
+    int ORDER_CREATED = 0;
+    int ORDER_DUPLICATE = 1;
+    int ORDER_NO_STOCK = 2;
 
-    void createVoucher(VoucherOrder voucherOrder);
+    Result seckillVoucher(Long voucherId, String token);
+
+    Result joinSeckillQueue(Long voucherId);
+
+    Result querySeckillQueue(Long voucherId);
+
+    Result queryOrderStatus(Long orderId);
+
+    int createVoucher(VoucherOrder voucherOrder);
 }
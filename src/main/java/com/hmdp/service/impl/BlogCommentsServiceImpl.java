@@ -1,11 +1,36 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
+import com.hmdp.dto.CursorResult;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.BlogComments;
 import com.hmdp.mapper.BlogCommentsMapper;
 import com.hmdp.service.IBlogCommentsService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.CursorUtils;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
 /**
  * <p>
  *  服务实现类
@@ -14,7 +39,186 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogCommentsServiceImpl extends ServiceImpl<BlogCommentsMapper, BlogComments> implements IBlogCommentsService {
 
+    // 评论状态：2 禁止查看
+    private static final int STATUS_FORBIDDEN = 2;
+    // 正在刷回数据库的评论数增量
+    private static final String FLUSHING_KEY = BLOG_COMMENTS_DELTA_KEY + ":flushing";
+
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Override
+    public Result saveComment(BlogComments comment) {
+        // 1. 校验
+        if(comment.getBlogId() == null || StrUtil.isBlank(comment.getContent())){
+            return Result.fail("评论内容不能为空！");
+        }
+        Long parentId = comment.getParentId() == null ? 0L : comment.getParentId();
+        Long answerId = comment.getAnswerId() == null ? 0L : comment.getAnswerId();
+        // 1.1 blog 必须存在
+        if(blogService.query().eq("id", comment.getBlogId()).count() == 0){
+            return Result.fail("博客不存在！");
+        }
+        if(parentId != 0){
+            // 1.2 回复：一级评论必须存在且属于同一篇 blog
+            BlogComments parent = getById(parentId);
+            if(parent == null || parent.getParentId() != 0 || !parent.getBlogId().equals(comment.getBlogId())){
+                return Result.fail("评论不存在！");
+            }
+            // 1.3 回复的评论必须是这条一级评论或它下面的回复
+            if(answerId != 0 && !answerId.equals(parentId)){
+                BlogComments answer = getById(answerId);
+                if(answer == null || !parentId.equals(answer.getParentId())){
+                    return Result.fail("评论不存在！");
+                }
+            }
+        }else if(answerId != 0){
+            // 1.4 一级评论不能回复其他评论
+            return Result.fail("评论不存在！");
+        }
+        // 2. 保存评论，客户端传入的服务端字段一律重置，创建时间由数据库生成，不能伪造排序位置
+        comment.setId(null);
+        comment.setUserId(UserHolder.getUser().getId());
+        comment.setParentId(parentId);
+        comment.setAnswerId(answerId == 0 ? parentId : answerId);
+        comment.setLiked(0);
+        comment.setStatus(false);
+        comment.setCreateTime(null);
+        comment.setUpdateTime(null);
+        boolean isSuccess = save(comment);
+        if(!isSuccess){
+            return Result.fail("发表评论失败！");
+        }
+        // 3. blog 的评论数先累加到 Redis，由定时任务批量刷回数据库
+        stringRedisTemplate.opsForHash().increment(BLOG_COMMENTS_DELTA_KEY, comment.getBlogId().toString(), 1);
+        // 4. 一级评论会出现在第一页，删除第一页缓存
+        if(parentId == 0){
+            stringRedisTemplate.delete(CACHE_COMMENTS_KEY + comment.getBlogId());
+        }
+        return Result.ok(comment.getId());
+    }
+
+    @Override
+    public Result queryCommentsOfBlog(Long blogId, String cursor) {
+        if(!CursorUtils.isValid(cursor, 2)){
+            return Result.fail("游标不合法！");
+        }
+        // 1. 非第一页，直接查询数据库
+        if(StrUtil.isNotBlank(cursor)){
+            return Result.ok(queryPage(query().eq("blog_id", blogId).eq("parent_id", 0), cursor, false));
+        }
+        // 2. 第一页，先查缓存
+        String key = CACHE_COMMENTS_KEY + blogId;
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if(StrUtil.isNotBlank(json)){
+            JSONObject obj = JSONUtil.parseObj(json);
+            List<BlogComments> list = obj.getJSONArray("list").toList(BlogComments.class);
+            return Result.ok(new CursorResult(list, obj.getStr("nextCursor")));
+        }
+        // 3. 未命中，查询数据库并写入缓存
+        CursorResult page = queryPage(query().eq("blog_id", blogId).eq("parent_id", 0), null, false);
+        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(page), CACHE_COMMENTS_TTL, TimeUnit.MINUTES);
+        return Result.ok(page);
+    }
+
+    @Override
+    public Result queryReplies(Long parentId, String cursor) {
+        if(!CursorUtils.isValid(cursor, 2)){
+            return Result.fail("游标不合法！");
+        }
+        return Result.ok(queryPage(query().eq("parent_id", parentId), cursor, true));
+    }
+
+    /**
+     * 按 (create_time, id) seek 分页，并批量填充评论作者
+     * @param asc true 按时间正序（回复），false 按时间倒序（一级评论）
+     */
+    private CursorResult queryPage(QueryChainWrapper<BlogComments> wrapper, String cursor, boolean asc) {
+        // 1. 解析游标
+        long[] last = CursorUtils.decode(cursor, 2);
+        int pageSize = SystemConstants.MAX_PAGE_SIZE;
+        // 2. seek 查询，多查一条用于判断是否还有下一页
+        // status 可以为 NULL，status <> 2 会漏掉这些评论
+        wrapper.and(w -> w.isNull("status").or().ne("status", STATUS_FORBIDDEN))
+                .apply(last != null, asc ? "(create_time, id) > ({0}, {1})" : "(create_time, id) < ({0}, {1})",
+                        last == null ? null : CursorUtils.fromMillis(last[0]),
+                        last == null ? null : last[1])
+                .last("LIMIT " + (pageSize + 1));
+        if(asc){
+            wrapper.orderByAsc("create_time", "id");
+        }else{
+            wrapper.orderByDesc("create_time", "id");
+        }
+        List<BlogComments> comments = wrapper.list();
+        // 3. 生成下一页游标
+        String nextCursor = null;
+        if(comments.size() > pageSize){
+            comments = comments.subList(0, pageSize);
+            BlogComments tail = comments.get(pageSize - 1);
+            nextCursor = CursorUtils.encode(CursorUtils.toMillis(tail.getCreateTime()), tail.getId());
+        }
+        // 4. 批量查询评论作者，不逐条查询用户
+        List<Long> userIds = comments.stream().map(BlogComments::getUserId).collect(Collectors.toList());
+        Map<Long, UserDTO> users = userService.queryUserDTOByIds(userIds);
+        for (BlogComments comment : comments) {
+            UserDTO user = users.get(comment.getUserId());
+            if(user != null){
+                comment.setName(user.getNickName());
+                comment.setIcon(user.getIcon());
+            }
+        }
+        return new CursorResult(comments, nextCursor);
+    }
+
+    /**
+     * 定时把 Redis 中累加的评论数增量批量写回 tb_blog.comments
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flushCommentCount() {
+        // 1. 多实例部署时只允许一个实例刷写
+        RLock lock = redissonClient.getLock("lock:comments:flush");
+        if(!lock.tryLock()){
+            return;
+        }
+        try {
+            // 2. 把增量 hash 原子地改名，之后新的评论会累加到新的 hash 中
+            // 如果上次刷写中途失败，FLUSHING_KEY 还在，先把它处理完
+            if(!Boolean.TRUE.equals(stringRedisTemplate.hasKey(FLUSHING_KEY))){
+                if(!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_COMMENTS_DELTA_KEY))){
+                    return;
+                }
+                stringRedisTemplate.rename(BLOG_COMMENTS_DELTA_KEY, FLUSHING_KEY);
+            }
+            // 3. 逐个 blog 写回数据库，写回一个删除一个，避免失败重试时重复累加
+            Map<Object, Object> deltas = stringRedisTemplate.opsForHash().entries(FLUSHING_KEY);
+            for (Map.Entry<Object, Object> entry : deltas.entrySet()) {
+                long blogId = Long.parseLong(entry.getKey().toString());
+                long delta = Long.parseLong(entry.getValue().toString());
+                if(delta != 0){
+                    blogService.update()
+                            .setSql("comments = IFNULL(comments, 0) + " + delta)
+                            .eq("id", blogId)
+                            .update();
+                }
+                stringRedisTemplate.opsForHash().delete(FLUSHING_KEY, entry.getKey());
+            }
+        } catch (Exception e) {
+            log.error("刷写评论数异常", e);
+        } finally {
+            lock.unlock();
+        }
+    }
 }
@@ -4,17 +4,20 @@ import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.entity.Follow;
-import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BlogLikeStore;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CursorUtils;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -25,11 +28,13 @@ import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -51,20 +56,42 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Resource
     private IFollowService followService;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private BlogLikeStore blogLikeStore;
+
     @Override
     public Result queryBlogById(Long id) {
-        // 1. 查询 blog
-        Blog blog = getById(id);
+        // 1. 查询 blog 卡片（blog + 作者昵称、头像），整体缓存在一个 key 中
+        Blog blog = cacheClient.queryWithPassThrough(CACHE_BLOG_KEY, id, Blog.class, this::queryBlogCard,
+                CACHE_BLOG_TTL, TimeUnit.MINUTES);
         if(blog == null){
             return Result.fail("博客不存在！");
         }
-        // 2. 查询 blog 有关的用户
-        queryBlogUser(blog);
-        // 3. 查询 blog 是否被点赞
+        // 2. 点赞数由计数器实时维护，覆盖缓存中的值
+        Integer liked = blogLikeStore.queryLikeCount(id);
+        if(liked != null){
+            blog.setLiked(liked);
+        }
+        // 3. 只有是否被点赞与当前用户有关，每次请求单独查询
         isBlogLiked(blog);
         return Result.ok(blog);
     }
 
+    // 缓存未命中时构建 blog 卡片
+    private Blog queryBlogCard(Long id){
+        Blog blog = getById(id);
+        if(blog == null){
+            return null;
+        }
+        queryBlogUser(blog);
+        // 卡片缓存重建时同时重置点赞数计数器
+        blogLikeStore.resetLikeCount(id, blog.getLiked());
+        return blog;
+    }
+
     private void isBlogLiked(Blog blog) {
         // 1. 获取登录用户
         UserDTO user = UserHolder.getUser();
@@ -72,13 +99,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             // 用户未登录，无需查询是否点赞
             return;
         }
-        Long userId = user.getId();
         // 2. 判断当前登录用户是否已经点赞
-        Long id = blog.getId(); // 博客 id
-        String key = BLOG_LIKED_KEY + id;
-//        String key = "blog:liked:" + id;
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        blog.setIsLike(score != null);
+        blog.setIsLike(blogLikeStore.isLiked(blog.getId(), user.getId()));
     }
 
     @Override
@@ -89,11 +111,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
-        // 查询用户 : lambda 写法
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
+        // 批量查询用户及点赞状态
+        fillBlogs(records);
         return Result.ok(records);
     }
 
@@ -101,53 +120,36 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     public Result likeBlog(Long id) {
         // 1. 获取登录用户
         Long userId = UserHolder.getUser().getId();
-        // 2. 判断当前登录用户是否已经点赞
-//        String key = "blog:liked:" + id;
-        String key = BLOG_LIKED_KEY + id;
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        if(score == null){
-            // 如果未点赞，则可以点赞
-            // 3.1 数据库点赞数 + 1
-            boolean isSuccess = update().setSql("liked = liked + 1").eq("id", id).update();
-            // 3.2 保存用户到 Redis 的 SortedSet 集合
-            // zadd key value score
-            if(isSuccess){
-                stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
-            }
-        }
-        else{
-            // 4. 如果已点赞，取消点赞
-            // 4.1 数据库点赞数 - 1
-            boolean isSuccess = update().setSql("liked = liked - 1").eq("id", id).update();
-            // 4.2 把用户从 Redis 的 set 集合移除
-            if(isSuccess){
-                stringRedisTemplate.opsForZSet().remove(key, userId.toString());
-            }
+        // 2. 在 Redis 中原子地切换点赞状态（位图 + 有界 zset）
+        boolean liked = blogLikeStore.toggle(id, userId);
+        // 3. 同步数据库点赞数：点赞 + 1，取消点赞 - 1
+        boolean isSuccess = update()
+                .setSql(liked ? "liked = liked + 1" : "liked = liked - 1")
+                .eq("id", id)
+                .update();
+        if(!isSuccess){
+            // 3.1 数据库更新失败（例如 blog 不存在），撤销 Redis 中的点赞状态
+            blogLikeStore.toggle(id, userId);
+            return Result.fail("博客不存在！");
         }
+        // 4. 点赞数计数器已在脚本中更新，blog 卡片缓存无需失效
         return Result.ok();
     }
 
     @Override
     public Result queryBlogLikes(Long id) {
-        String key = BLOG_LIKED_KEY + id;
-        // 1. 查询 top5 的点赞用户 zrange key 0 4
-        Set<String> top5 = stringRedisTemplate.opsForZSet().range(key, 0, 4);
-        if(top5 == null || top5.isEmpty()){
+        // 1. 查询 top5 的点赞用户
+        List<Long> ids = blogLikeStore.queryEarliestLikers(id, 5);
+        if(ids.isEmpty()){
             return Result.ok(Collections.emptyList());
         }
-        // 2. 解析出其中的用户id
-        List<Long> ids = top5.stream().map(Long::valueOf).collect(Collectors.toList());
-        // 3. 根据用户id查询用户，并将 User 转换为 UserDTO
-        // WHERE id IN (5, 1) ORDER BY FIELD(id, 5, 1)
-        String idStr = StrUtil.join(",", ids);
-        List<UserDTO> userDTOS = userService.query()
-                .in("id", ids)
-                .last("ORDER BY FIELD(id," + id)
-                .list()
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+        // 2. 批量查询用户，并按点赞顺序返回
+        Map<Long, UserDTO> users = userService.queryUserDTOByIds(ids);
+        List<UserDTO> userDTOS = ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
-        // 4. 返回
+        // 3. 返回
         return Result.ok(userDTOS);
     }
 
@@ -161,6 +163,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if(!isSuccess){
             return Result.fail("新增笔记失败！");
         }
+        // 2.1 清除可能存在的空值缓存
+        cacheClient.delete(CACHE_BLOG_KEY + blog.getId());
         // 3. 查询笔记作者的所有粉丝
         // select * from tb_follow where follow_user_id = ?
         List<Follow> follows = followService.query().eq("follow_user_id", user.getId()).list();
@@ -212,12 +216,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         String idStr = StrUtil.join(",", ids);
         List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
 
-        for (Blog blog : blogs) {
-            // 5.1 查询 blog 有关的用户
-            queryBlogUser(blog);
-            // 5.2 查询 blog 是否被点赞
-            isBlogLiked(blog);
-        }
+        // 5.1 批量查询 blog 有关的用户及是否被点赞
+        fillBlogs(blogs);
 
         // 6. 封装并返回
         ScrollResult r = new ScrollResult();
@@ -228,9 +228,73 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok();
     }
 
+    @Override
+    public Result queryBlogOfUserByCursor(Long userId, String cursor) {
+        // 1. 解析游标：上一页最后一条记录的 (create_time, id)
+        if(!CursorUtils.isValid(cursor, 2)){
+            return Result.fail("游标不合法！");
+        }
+        long[] last = CursorUtils.decode(cursor, 2);
+        int pageSize = SystemConstants.MAX_PAGE_SIZE;
+        // 2. 按 (create_time, id) 倒序 seek，多查一条用于判断是否还有下一页，不需要 COUNT 查询
+        // select * from tb_blog where user_id = ? and (create_time, id) < (?, ?)
+        // order by create_time desc, id desc limit ?
+        List<Blog> blogs = query()
+                .eq("user_id", userId)
+                .apply(last != null, "(create_time, id) < ({0}, {1})",
+                        last == null ? null : CursorUtils.fromMillis(last[0]),
+                        last == null ? null : last[1])
+                .orderByDesc("create_time", "id")
+                .last("LIMIT " + (pageSize + 1))
+                .list();
+        // 3. 生成下一页游标
+        String nextCursor = null;
+        if(blogs.size() > pageSize){
+            blogs = blogs.subList(0, pageSize);
+            Blog tail = blogs.get(pageSize - 1);
+            nextCursor = CursorUtils.encode(CursorUtils.toMillis(tail.getCreateTime()), tail.getId());
+        }
+        return Result.ok(new CursorResult(blogs, nextCursor));
+    }
+
+    /**
+     * 批量填充一页 blog 的作者信息与当前用户的点赞状态：
+     * 作者信息走一次 MGET（未命中的统一回源），点赞状态走一次 pipeline，
+     * 避免每条 blog 各查一次用户、各发一次 ZSCORE
+     */
+    private void fillBlogs(List<Blog> blogs){
+        if(blogs.isEmpty()){
+            return;
+        }
+        // 1. 批量查询作者
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toList());
+        Map<Long, UserDTO> users = userService.queryUserDTOByIds(userIds);
+        for (Blog blog : blogs) {
+            UserDTO author = users.get(blog.getUserId());
+            if(author != null){
+                blog.setName(author.getNickName());
+                blog.setIcon(author.getIcon());
+            }
+        }
+        // 2. 获取登录用户，未登录则无需查询是否点赞
+        UserDTO user = UserHolder.getUser();
+        if(user == null){
+            return;
+        }
+        // 3. 一次 pipeline 查询所有 blog 的点赞状态
+        List<Long> blogIds = blogs.stream().map(Blog::getId).collect(Collectors.toList());
+        List<Boolean> liked = blogLikeStore.isLiked(blogIds, user.getId());
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(liked.get(i));
+        }
+    }
+
     private void queryBlogUser(Blog blog){
         Long userId = blog.getUserId();
-        User user = userService.getById(userId);
+        UserDTO user = userService.queryUserDTOByIds(Collections.singletonList(userId)).get(userId);
+        if(user == null){
+            return;
+        }
         blog.setName(user.getNickName());
         blog.setIcon(user.getIcon());
     }
@@ -4,14 +4,22 @@ import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CursorUtils;
+import com.hmdp.utils.GeoUtils;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ShopClusterGrid;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopGeoSync;
+import com.hmdp.utils.ShopSearchIndex;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
@@ -49,6 +57,15 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Resource
+    private ShopGeoSync shopGeoSync;
+
+    @Resource
+    private ShopSearchIndex shopSearchIndex;
+
 
     @Override
     public Result queryById(Long id) {
@@ -213,6 +230,16 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 //        return shop;
 //    }
 
+    @Override
+    public Result saveShop(Shop shop) {
+        // 1. 写入数据库
+        save(shop);
+        // 2. 同步 GEO 数据并通知所有实例更新进程内索引，新店铺立即可以被附近查询到
+        shopGeoSync.onShopChanged(null, getById(shop.getId()));
+        // 3. 返回店铺id
+        return Result.ok(shop.getId());
+    }
+
     @Override
     @Transactional
     public Result update(Shop shop) {
@@ -220,11 +247,34 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if(id == null){
             return Result.fail("店铺id不能为空");
         }
+        // 0. 查询修改前的店铺，用于判断类型是否变化
+        Shop old = getById(id);
+        if(old == null){
+            return Result.fail("店铺不存在!");
+        }
         // 1. 更新数据库
         updateById(shop);
         // 2. 删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + shop.getId());
-        //
+        cacheClient.delete(CACHE_SHOP_KEY + shop.getId());
+        // 3. 同步 GEO 数据（含类型变化）并通知所有实例更新进程内索引
+        shopGeoSync.onShopChanged(old, getById(id));
+        return Result.ok();
+    }
+
+    @Override
+    @Transactional
+    public Result deleteShop(Long id) {
+        // 1. 查询店铺
+        Shop old = getById(id);
+        if(old == null){
+            return Result.fail("店铺不存在!");
+        }
+        // 2. 删除数据库记录
+        removeById(id);
+        // 3. 删除缓存
+        cacheClient.delete(CACHE_SHOP_KEY + id);
+        // 4. 从 GEO 数据中移除并通知所有实例更新进程内索引
+        shopGeoSync.onShopChanged(old, null);
         return Result.ok();
     }
 
@@ -240,50 +290,276 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             return Result.ok(page.getRecords());
         }
 
-        // 2. 计算分页参数
+        // 2. 计算分页参数，只有附近查询需要限制页码
+        if(!isValidNearbyPage(current)){
+            return Result.fail("页码不合法！");
+        }
         int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
         int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
 
-        // 3. 查询 redis，按照距离排序，分页。 // 结果： shopId, distance
-        String key = SHOP_GEO_KEY + typeId;
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo()
-                .search(
-                        key,
-                        GeoReference.fromCoordinate(x, y),
-                        new Distance(5000),
-                        RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end)
-                );
-
-        // 4. 解析出 id
-        if(results == null){
-            return Result.ok(Collections.emptyList());
+        // 3. 进程内空间索引已就绪，直接在 JVM 内按距离分页，不访问 Redis 和数据库
+        if(shopGeoIndex.isReady()){
+            return Result.ok(shopGeoIndex.nearest(typeId.longValue(), x, y, SystemConstants.NEARBY_RADIUS, from, end));
         }
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
-        if(list.size() < from){
-            // 没有下一页了，返回空列表
+
+        // 4. 否则按附近结果缓存 + Redis GEO 查询
+        return Result.ok(queryNearbyFromRedis(typeId, x, y, from, end));
+    }
+
+    // 页码决定 top-k 堆的大小，必须限制范围，也避免计算偏移量时溢出
+    private static boolean isValidNearbyPage(Integer current) {
+        return current != null && current >= 1 && current <= SystemConstants.NEARBY_MAX_PAGE;
+    }
+
+    @Override
+    public Result searchShopByType(Integer typeId, Double x, Double y, String sortBy, Double radius,
+                                   Long minPrice, Long maxPrice, Integer current) {
+        // 1. 校验参数
+        if(!isValidNearbyPage(current)){
+            return Result.fail("页码不合法！");
+        }
+        ShopGeoIndex.Sort sort = ShopGeoIndex.Sort.of(sortBy);
+        if(sort == null){
+            return Result.fail("不支持的排序方式！");
+        }
+        double r = radius == null ? SystemConstants.NEARBY_RADIUS : radius;
+        if(r <= 0 || r > SystemConstants.NEARBY_MAX_RADIUS){
+            return Result.fail("查询半径不合法！");
+        }
+        long low = minPrice == null ? Long.MIN_VALUE : minPrice;
+        long high = maxPrice == null ? Long.MAX_VALUE : maxPrice;
+        if(low > high){
             return Result.ok(Collections.emptyList());
         }
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
 
-        // 4.1 截取 from ~ end 的部分
-        List<Long> ids = new ArrayList<>(list.size());
-        Map<String, Distance> distanceMap = new HashMap<>(list.size());
-        list.stream().skip(from).forEach(result ->{
-            // 4.2 获取店铺 id
-            String shopIdStr = result.getContent().getName();
-            ids.add(Long.valueOf(shopIdStr));
-            // 4.3 获取距离
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr, distance);
-        });
+        // 2. 进程内空间索引已就绪，在 KD 树上按排序值剪枝求 top-k，不访问 Redis 和数据库
+        if(shopGeoIndex.isReady()){
+            return Result.ok(shopGeoIndex.search(typeId.longValue(), x, y, r, sort, low, high, from, end));
+        }
 
-        // 5. 根据 id 查询 shop
+        // 3. 否则从 Redis GEO 查出半径内的店铺 id 和距离（由近到远），由数据库过滤均价、排序并分页
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(
+                SHOP_GEO_KEY + typeId,
+                GeoReference.fromCoordinate(x, y),
+                new Distance(r),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending()
+        );
+        if(results == null || results.getContent().isEmpty()){
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = new ArrayList<>(results.getContent().size());
+        Map<Long, Double> distanceMap = new HashMap<>(results.getContent().size());
+        for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results) {
+            Long id = Long.valueOf(result.getContent().getName());
+            ids.add(id);
+            distanceMap.put(id, result.getDistance().getValue());
+        }
         String idStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
+        String orderBy;
+        switch (sort) {
+            case SCORE: orderBy = "score DESC, "; break;
+            case SOLD: orderBy = "sold DESC, "; break;
+            case PRICE: orderBy = "avg_price IS NULL, avg_price ASC, "; break;
+            default: orderBy = "";
+        }
+        List<Shop> shops = query()
+                .in("id", ids)
+                .ge(minPrice != null, "avg_price", minPrice)
+                .le(maxPrice != null, "avg_price", maxPrice)
+                .last("ORDER BY " + orderBy + "FIELD(id," + idStr + ") LIMIT " + from + ", "
+                        + SystemConstants.DEFAULT_PAGE_SIZE)
+                .list();
         for (Shop shop : shops) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+            shop.setDistance(distanceMap.get(shop.getId()));
         }
-
-        // 6. 返回
         return Result.ok(shops);
     }
+
+    @Override
+    public Result queryShopByViewport(Integer typeId, Double minX, Double minY, Double maxX, Double maxY, Integer zoom) {
+        // 1. 校验参数，暂不支持跨越 180 度经线的视野
+        if(minX > maxX || minY > maxY || minX < -180 || maxX > 180 || minY < -90 || maxY > 90){
+            return Result.fail("视野范围不合法！");
+        }
+        int z = Math.max(SystemConstants.VIEWPORT_MIN_ZOOM, Math.min(zoom, SystemConstants.VIEWPORT_MAX_ZOOM));
+        // 2. 根据缩放级别和视野大小确定格子边长，格子数不超过上限，响应大小有界
+        ShopClusterGrid grid = new ShopClusterGrid(ShopClusterGrid.cellSize(minX, minY, maxX, maxY, z,
+                SystemConstants.VIEWPORT_MAX_CELLS));
+        // 3. 进程内空间索引已就绪，直接在内存中按经度二分 + 纬度过滤
+        if(shopGeoIndex.isReady()){
+            shopGeoIndex.viewport(typeId == null ? null : typeId.longValue(), minX, minY, maxX, maxY, grid);
+            return Result.ok(grid.clusters());
+        }
+        // 4. 否则查询数据库中视野内的店铺再聚合
+        List<Shop> shops = query()
+                .eq(typeId != null, "type_id", typeId)
+                .between("x", minX, maxX)
+                .between("y", minY, maxY)
+                .list();
+        for (Shop shop : shops) {
+            grid.add(shop);
+        }
+        return Result.ok(grid.clusters());
+    }
+
+    /**
+     * 附近店铺查询的 Redis 路径
+     * 同一个 geohash 格子内的请求共享一份候选集 cache:shop:nearby:{typeId}:{geohash}:{page}，
+     * 候选集保证包含格子内任意一点的前 end 个最近店铺，每个请求再按自己的坐标精确计算距离、排序、分页
+     */
+    private List<Shop> queryNearbyFromRedis(Integer typeId, double x, double y, int from, int end) {
+        // 1. 查询候选集缓存
+        String cell = GeoUtils.geohash(x, y, CACHE_SHOP_NEARBY_PRECISION);
+        int page = end / SystemConstants.DEFAULT_PAGE_SIZE;
+        String key = CACHE_SHOP_NEARBY_KEY + typeId + ":" + cell + ":" + page;
+        String candidates = stringRedisTemplate.opsForValue().get(key);
+        if(candidates == null){
+            // 2. 未命中，以格子中心查询候选集并写入缓存，空结果也缓存
+            candidates = searchCandidates(SHOP_GEO_KEY + typeId, cell, end);
+            stringRedisTemplate.opsForValue().set(key, candidates, CACHE_SHOP_NEARBY_TTL, TimeUnit.SECONDS);
+        }
+        if(candidates.isEmpty()){
+            return Collections.emptyList();
+        }
+
+        // 3. 按调用方的坐标精确计算距离，过滤半径外的店铺并排序
+        String[] items = candidates.split(",");
+        List<Long> ids = new ArrayList<>(items.length);
+        Map<Long, Double> distanceMap = new HashMap<>(items.length);
+        for (String item : items) {
+            String[] parts = item.split(":");
+            double distance = GeoUtils.distance(x, y, Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+            if(distance <= SystemConstants.NEARBY_RADIUS){
+                Long id = Long.valueOf(parts[0]);
+                ids.add(id);
+                distanceMap.put(id, distance);
+            }
+        }
+        if(ids.size() <= from){
+            // 没有下一页了，返回空列表
+            return Collections.emptyList();
+        }
+        ids.sort(Comparator.comparingDouble(distanceMap::get));
+
+        // 4. 截取 from ~ end 的部分，根据 id 查询 shop
+        List<Long> pageIds = ids.subList(from, Math.min(end, ids.size()));
+        String idStr = StrUtil.join(",", pageIds);
+        List<Shop> shops = query().in("id", pageIds).last("ORDER BY FIELD(id," + idStr + ")").list();
+        for (Shop shop : shops) {
+            shop.setDistance(distanceMap.get(shop.getId()));
+        }
+        return shops;
+    }
+
+    /**
+     * 以格子中心 c 为圆心查询候选集，格式为 id:x:y,id:x:y...
+     * 设 h 为中心到格子角点的最大距离，d 为 c 的第 end 个最近店铺的距离，则格子内任意一点 q 的第 end 个最近店铺
+     * 距离 q 不超过 d + h，距离 c 不超过 d + 2h；同时半径 R 内的店铺距离 c 不超过 R + h，两者取小即可
+     */
+    private String searchCandidates(String geoKey, String cell, int end) {
+        // 1. 格子中心和半对角线长度
+        double[] bounds = GeoUtils.geohashBounds(cell);
+        double cx = (bounds[0] + bounds[2]) / 2, cy = (bounds[1] + bounds[3]) / 2;
+        double h = Math.max(GeoUtils.distance(cx, cy, bounds[0], bounds[1]),
+                GeoUtils.distance(cx, cy, bounds[0], bounds[3]));
+        double radius = SystemConstants.NEARBY_RADIUS + h;
+        // 2. 查询 c 在 R + h 内的第 end 个最近店铺，收紧候选半径
+        GeoResults<RedisGeoCommands.GeoLocation<String>> nearest = stringRedisTemplate.opsForGeo().search(
+                geoKey,
+                GeoReference.fromCoordinate(cx, cy),
+                new Distance(radius),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending().limit(end)
+        );
+        if(nearest == null || nearest.getContent().isEmpty()){
+            return "";
+        }
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = nearest.getContent();
+        if(list.size() >= end){
+            radius = Math.min(radius, list.get(list.size() - 1).getDistance().getValue() + 2 * h);
+        }
+        // 3. 查询候选半径内的店铺及坐标
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(
+                geoKey,
+                GeoReference.fromCoordinate(cx, cy),
+                new Distance(radius),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeCoordinates()
+        );
+        if(results == null){
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results) {
+            RedisGeoCommands.GeoLocation<String> location = result.getContent();
+            if(sb.length() > 0){
+                sb.append(',');
+            }
+            sb.append(location.getName()).append(':')
+                    .append(location.getPoint().getX()).append(':')
+                    .append(location.getPoint().getY());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        if(current == null || current < 1){
+            return Result.fail("页码不合法！");
+        }
+        // 1. 没有关键字，按 id 分页查询
+        if(StrUtil.isBlank(name)){
+            Page<Shop> page = query().page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        // 2. 搜索索引已就绪，在内存中检索，不访问数据库
+        if(shopSearchIndex.isReady()){
+            int from = (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+            return Result.ok(shopSearchIndex.search(name, from, from + SystemConstants.MAX_PAGE_SIZE));
+        }
+        // 3. 否则退回数据库 LIKE 查询
+        Page<Shop> page = query()
+                .like("name", name)
+                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+        return Result.ok(page.getRecords());
+    }
+
+    @Override
+    public Result suggestShop(String prefix) {
+        // 输入提示只读内存，索引未就绪时返回空列表，不退回数据库
+        return Result.ok(shopSearchIndex.suggest(prefix));
+    }
+
+    @Override
+    public Result queryShopByTypeWithCursor(Integer typeId, String cursor) {
+        return queryShopByCursor(query().eq("type_id", typeId), cursor, SystemConstants.DEFAULT_PAGE_SIZE);
+    }
+
+    @Override
+    public Result queryShopByNameWithCursor(String name, String cursor) {
+        return queryShopByCursor(query().like(StrUtil.isNotBlank(name), "name", name), cursor,
+                SystemConstants.MAX_PAGE_SIZE);
+    }
+
+    // 店铺的 create_time 允许为空，因此按主键 id seek，与原 OFFSET 分页的顺序一致
+    private Result queryShopByCursor(QueryChainWrapper<Shop> wrapper, String cursor, int pageSize) {
+        // 1. 解析游标：上一页最后一条记录的 id
+        if(!CursorUtils.isValid(cursor, 1)){
+            return Result.fail("游标不合法！");
+        }
+        long[] last = CursorUtils.decode(cursor, 1);
+        // 2. where ... and id > ? order by id limit ?，多查一条用于判断是否还有下一页
+        List<Shop> shops = wrapper
+                .gt(last != null, "id", last == null ? null : last[0])
+                .orderByAsc("id")
+                .last("LIMIT " + (pageSize + 1))
+                .list();
+        // 3. 生成下一页游标
+        String nextCursor = null;
+        if(shops.size() > pageSize){
+            shops = shops.subList(0, pageSize);
+            nextCursor = CursorUtils.encode(shops.get(pageSize - 1).getId());
+        }
+        return Result.ok(new CursorResult(shops, nextCursor));
+    }
 }
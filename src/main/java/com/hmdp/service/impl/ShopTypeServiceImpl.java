@@ -1,11 +1,27 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeCatalog;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.SHOP_TYPE_REFRESH_CHANNEL;
+
 /**
  * <p>
  *  服务实现类
@@ -14,7 +30,63 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 店铺类型很少变化，启动时加载到内存，变化时通过 Redis 发布订阅通知所有实例重新加载
+    private volatile ShopTypeCatalog catalog;
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> reload(),
+                new ChannelTopic(SHOP_TYPE_REFRESH_CHANNEL));
+        try {
+            reload();
+        } catch (Exception e) {
+            // 加载失败时在第一次查询时重试
+            log.error("店铺类型加载失败", e);
+        }
+    }
+
+    @Override
+    public ShopTypeCatalog queryTypeCatalog() {
+        ShopTypeCatalog current = catalog;
+        if(current == null){
+            current = reload();
+        }
+        return current;
+    }
+
+    @Override
+    public Result refreshTypeCatalog() {
+        // 通知所有实例（包括自己）重新加载
+        stringRedisTemplate.convertAndSend(SHOP_TYPE_REFRESH_CHANNEL, String.valueOf(System.currentTimeMillis()));
+        return Result.ok();
+    }
+
+    /**
+     * 从数据库加载店铺类型，序列化一次响应体并计算 ETag
+     */
+    private synchronized ShopTypeCatalog reload() {
+        List<ShopType> types = query().orderByAsc("sort").list();
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(Result.ok(types));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+        catalog = new ShopTypeCatalog(Collections.unmodifiableList(types), body, DigestUtil.md5Hex(body));
+        log.info("店铺类型加载完成，共 {} 个类型", types.size());
+        return catalog;
+    }
 }
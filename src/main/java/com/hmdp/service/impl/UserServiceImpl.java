@@ -3,6 +3,8 @@ package com.hmdp.service.impl;
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
@@ -15,6 +17,8 @@ import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
@@ -23,7 +27,10 @@ import javax.servlet.http.HttpSession;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -176,6 +183,55 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(count);
     }
 
+    @Override
+    public Map<Long, UserDTO> queryUserDTOByIds(Collection<Long> ids) {
+        Map<Long, UserDTO> result = new HashMap<>(ids.size());
+        if(ids.isEmpty()){
+            return result;
+        }
+        // 1. 去重，保证顺序与 multiGet 的返回值一一对应
+        List<Long> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<String> keys = new ArrayList<>(idList.size());
+        for (Long id : idList) {
+            keys.add(CACHE_USER_KEY + id);
+        }
+        // 2. 一次 MGET 查询缓存
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(keys);
+        List<Long> missIds = new ArrayList<>();
+        for (int i = 0; i < idList.size(); i++) {
+            String json = jsons == null ? null : jsons.get(i);
+            if(StrUtil.isNotBlank(json)){
+                // 2.1 命中缓存
+                result.put(idList.get(i), JSONUtil.toBean(json, UserDTO.class));
+            }else{
+                // 2.2 未命中，记录下来统一回源
+                missIds.add(idList.get(i));
+            }
+        }
+        if(missIds.isEmpty()){
+            return result;
+        }
+        // 3. 未命中的用户一次性查询数据库
+        List<UserDTO> missUsers = new ArrayList<>(missIds.size());
+        for (User user : listByIds(missIds)) {
+            UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+            result.put(userDTO.getId(), userDTO);
+            missUsers.add(userDTO);
+        }
+        // 4. 通过 pipeline 回写缓存
+        if(!missUsers.isEmpty()){
+            long ttl = TimeUnit.MINUTES.toSeconds(CACHE_USER_TTL);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (UserDTO userDTO : missUsers) {
+                    conn.setEx(CACHE_USER_KEY + userDTO.getId(), ttl, JSONUtil.toJsonStr(userDTO));
+                }
+                return null;
+            });
+        }
+        return result;
+    }
+
     private User createUserWithPhone(String phone) {
         // 1. 创建用户
         User user = new User();
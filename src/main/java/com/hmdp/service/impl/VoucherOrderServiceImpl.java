@@ -1,35 +1,52 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.OrderStatusStore;
+import com.hmdp.utils.OrderTimeoutQueue;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillOrderStream;
+import com.hmdp.utils.SeckillStockStore;
+import com.hmdp.utils.SeckillWaitingRoom;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_TTL;
 
 /**
  * <p>
@@ -52,9 +69,60 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    // 下单消息队列消费者专用，阻塞读取不占用请求线程的连接
+    @Resource
+    private RedisTemplate<String, String> streamRedisTemplate;
+
+    // 每次从下单消息队列读取的消息数和阻塞等待时间
+    @Value("${hmdp.seckill.consumer.batch-size:10}")
+    private int consumerBatchSize;
+
+    @Value("${hmdp.seckill.consumer.block-ms:2000}")
+    private long consumerBlockMillis;
+
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private SeckillStockStore seckillStockStore;
+
+    @Resource
+    private OrderTimeoutQueue orderTimeoutQueue;
+
+    @Resource
+    private SeckillWaitingRoom seckillWaitingRoom;
+
+    @Resource
+    private OrderStatusStore orderStatusStore;
+
+    @Resource
+    private SeckillOrderStream seckillOrderStream;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    // 支付时限，超时未支付的订单会被取消并归还库存
+    @Value("${hmdp.order.pay-timeout-minutes:15}")
+    private long payTimeoutMinutes;
+
+    // 兜底扫描只处理该时间之后创建的订单，例如 2026-10-19T00:00:00；为空时不扫描，避免首次上线时取消所有历史未支付订单
+    @Value("${hmdp.order.timeout-sweep-since:}")
+    private String timeoutSweepSince;
+
+    // 下单队列允许积压的消息数，超过后拒绝秒杀请求
+    @Value("${hmdp.seckill.max-backlog:100000}")
+    private long maxBacklog;
+
+    // 消息投递超过该次数仍处理失败，移入死信队列
+    @Value("${hmdp.seckill.max-deliveries:10}")
+    private long maxDeliveries;
+
+    // 订单状态：1 未支付，4 已取消
+    private static final int STATUS_UNPAID = 1;
+    private static final int STATUS_CANCELLED = 4;
+    // 每次取消的超时订单数
+    private static final int TIMEOUT_BATCH_SIZE = 200;
+
     // lua
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
     static{
@@ -63,14 +131,55 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
-    // 代理对象
-    private IVoucherOrderService proxy;
+    // lua 脚本返回值对应的提示
+    private static final String[] SECKILL_FAIL_MESSAGES = {"", "库存不足", "不能重复下单", "秒杀尚未开始", "秒杀已经结束", "排队人数过多，请稍后再试"};
+
+    // 代理对象，启动时就可用，消费者处理积压的订单不依赖先有秒杀请求
+    @Lazy
+    @Resource
+    private IVoucherOrderService self;
+
+    @Override
+    public Result joinSeckillQueue(Long voucherId) {
+        return Result.ok(seckillWaitingRoom.join(voucherId, UserHolder.getUser().getId()));
+    }
+
+    @Override
+    public Result querySeckillQueue(Long voucherId) {
+        return Result.ok(seckillWaitingRoom.query(voucherId, UserHolder.getUser().getId()));
+    }
+
+    @Override
+    public Result queryOrderStatus(Long orderId) {
+        Long userId = UserHolder.getUser().getId();
+        // 1. 查询 Redis 中的下单结果
+        Map<Object, Object> status = orderStatusStore.get(orderId);
+        Object owner = status.get(OrderStatusStore.USER_FIELD);
+        if(owner != null){
+            if(!userId.toString().equals(owner)){
+                return Result.fail("订单不存在！");
+            }
+            return Result.ok(status.get(OrderStatusStore.STATE_FIELD));
+        }
+        // 2. 结果记录有效期内的订单一定有记录，不再查询数据库，避免秒杀期间的轮询打到 MySQL
+        // 记录存在但缺少下单用户时（旧版本写入），无法校验用户，查询数据库
+        if(status.isEmpty() && RedisIdWorker.createTime(orderId).isAfter(LocalDateTime.now().minusMinutes(ORDER_STATUS_TTL))){
+            return Result.fail("订单不存在！");
+        }
+        // 3. 更早的订单查询数据库
+        int count = query().eq("id", orderId).eq("user_id", userId).count();
+        return count > 0 ? Result.ok(OrderStatusStore.CREATED) : Result.fail("订单不存在！");
+    }
 
     // 秒杀-主函数
     @Override
-    public Result seckillVoucher(Long voucherId) {
+    public Result seckillVoucher(Long voucherId, String token) {
         // 获取用户
         Long userId = UserHolder.getUser().getId();
+        // 0. 校验排队放行的抢购凭证，只做本地签名校验，不访问 Redis
+        if(seckillWaitingRoom.isEnabled() && !seckillWaitingRoom.verify(token, voucherId, userId)){
+            return Result.fail("请先排队获取抢购资格！");
+        }
         // 获取订单id
         long orderId = redisIdWorker.nextId("order");   // 生成下单id
         // 1. 执行 lua 脚本
@@ -78,18 +187,18 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 Collections.emptyList(),
                 voucherId.toString(),
                 userId.toString(),
-                String.valueOf(orderId));
+                String.valueOf(orderId),
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(TimeUnit.MINUTES.toSeconds(ORDER_STATUS_TTL)),
+                String.valueOf(maxBacklog));
         // 2. 判断结果是否为0
         int r = result.intValue();
         if(r != 0){
-            // 2.1 不为0，代表没有购买资格
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+            // 2.1 不为0，代表没有购买资格：1 库存不足，2 重复下单，3 尚未开始，4 已经结束，5 下单队列积压过多
+            return Result.fail(SECKILL_FAIL_MESSAGES[r]);
         }
 
-        // 3. 获取代理对象
-        proxy = (IVoucherOrderService)AopContext.currentProxy();
-
-        // 4. 返回订单id
+        // 3. 返回订单id
         return Result.ok(orderId);
     }
 
@@ -103,17 +212,17 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     // 异步下单线程类
     private class VoucherOrderHandler implements Runnable{
-        String queueName = "stream.orders";
+        String queueName = SeckillOrderStream.STREAM_KEY;
 
         @Override
         public void run() {
-            while(true){
+            while(!Thread.currentThread().isInterrupted()){
                 try {
                     // 1. 获取消息队列中的订单信息
-                    // XREADGROUP GROUP g1 c1 count 1 BLOCK 2000 STREAMS stream.order >
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                    // XREADGROUP GROUP g1 c1 count 10 BLOCK 2000 STREAMS stream.order >
+                    List<MapRecord<String, Object, Object>> list = streamRedisTemplate.opsForStream().read(
                             Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
+                            StreamReadOptions.empty().count(consumerBatchSize).block(Duration.ofMillis(consumerBlockMillis)),
                             StreamOffset.create(queueName, ReadOffset.lastConsumed())
 
                     );
@@ -123,17 +232,8 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                         continue;
                     }
 
-                    // 3. 解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-
-                    // 4. 如果获取成功，则可以下单
-                    handleVoucherOrder(voucherOrder);
-
-                    // 5. ACK确认
-                    // XACK stream.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
+                    // 3. 如果获取成功，则可以下单，处理完后确认消息
+                    handleRecords(list);
 
                 } catch (Exception e) {
                     log.error("处理订单异常", e);
@@ -144,11 +244,12 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
 
         private void handlePendingList(){
+            int retries = 0;
             while(true){
                 try {
                     // 1. 获取pedning-list中的订单信息
                     // XREADGROUP GROUP g1 c1 count 1 STREAMS stream.order 0
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                    List<MapRecord<String, Object, Object>> list = streamRedisTemplate.opsForStream().read(
                             Consumer.from("g1", "c1"),
                             StreamReadOptions.empty().count(1),
                             StreamOffset.create(queueName, ReadOffset.from("0"))
@@ -159,33 +260,59 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                         break;
                     }
 
-                    // 3. 解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-
-                    // 4. 如果获取成功，则可以下单
-                    handleVoucherOrder(voucherOrder);
-
-                    // 5. ACK确认
-                    // XACK stream.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
+                    // 3. 如果获取成功，则可以下单，投递次数过多的消息移入死信队列
+                    handlePendingRecord(list.get(0));
+                    retries = 0;
 
                 } catch (Exception e) {
                     log.error("处理 pending-list 订单异常", e);
-                    // 处理 pending-list 时又发生异常，继续重试
+                    // 处理 pending-list 时又发生异常，退避后重试，最长间隔 2 秒
                     try {
-                        Thread.sleep(20);
+                        Thread.sleep(Math.min(2000, 20L << Math.min(retries++, 7)));
                     } catch (InterruptedException ex) {
-                        ex.printStackTrace();
+                        log.warn("处理 pending-list 时线程被中断");
+                        Thread.currentThread().interrupt();
+                        return;
                     }
                 }
             }
         }
     }
 
-    // 下单函数 - 应用层（锁）
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
+    // 处理 pending-list 中的一条消息，投递次数过多的消息移入死信队列，不再阻塞后续消息
+    private void handlePendingRecord(MapRecord<String, Object, Object> record) {
+        long deliveries = seckillOrderStream.deliveryCount(record.getId());
+        if(deliveries > maxDeliveries){
+            seckillOrderStream.deadLetter(record, deliveries);
+            return;
+        }
+        handleRecords(Collections.singletonList(record));
+    }
+
+    // 逐条下单，已处理的消息的下单结果和 ACK 在一个 pipeline 中写入，出现异常时之后的消息留在 pending-list 中
+    private void handleRecords(List<MapRecord<String, Object, Object>> records){
+        Map<Long, String> states = new HashMap<>(records.size());
+        Map<Long, Long> users = new HashMap<>(records.size());
+        List<RecordId> done = new ArrayList<>(records.size());
+        try {
+            for (MapRecord<String, Object, Object> record : records) {
+                // 1. 解析消息中的订单信息
+                Map<Object, Object> values = record.getValue();
+                VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
+                // 2. 下单
+                states.put(voucherOrder.getId(), handleVoucherOrder(voucherOrder));
+                users.put(voucherOrder.getId(), voucherOrder.getUserId());
+                done.add(record.getId());
+            }
+        } finally {
+            // 3. 写入下单结果并 ACK 确认
+            // XACK stream.orders g1 id
+            orderStatusStore.complete(states, users, SeckillOrderStream.STREAM_KEY, SeckillOrderStream.GROUP, done);
+        }
+    }
+
+    // 下单函数 - 应用层（锁），返回下单结果
+    private String handleVoucherOrder(VoucherOrder voucherOrder) {
         // 1. 获取用户
         Long userId = voucherOrder.getUserId();
         // 2. 创建锁对象
@@ -194,14 +321,26 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         boolean isLock = lock.tryLock();
         // 4. 判断是否获取锁成功
         if(!isLock){
-            // 获取锁失败，返回错误或者重试
-            log.error("不允许重复下单");
-            return;
+            // 获取锁失败：seckill.lua 保证同一用户同一张券只有一个订单在途，持有锁的通常就是同一条消息
+            // （重复投递、死信重放），此时不能补偿也不能确认，抛出异常让消息留在 pending-list 中重试，
+            // 重试时按订单id判断订单是否已经创建
+            throw new IllegalStateException("用户 " + userId + " 的订单正在处理，订单 " + voucherOrder.getId() + " 稍后重试");
         }
         // 5. 获取锁成功，走购买的逻辑
         try {
             // 用代理对象调用 createVoucher 方法，才能让事务 @Transactional 生效
-            proxy.createVoucher(voucherOrder);
+            int status = self.createVoucher(voucherOrder);
+            // 6. 数据库库存不足是确定的失败，把用户移出订单集合，用户可以重新抢购
+            // Redis 中的库存多于数据库，不归还，由对账任务告警
+            if(status == ORDER_NO_STOCK){
+                seckillStockStore.compensate(voucherOrder.getVoucherId(), userId, false);
+                return OrderStatusStore.FAILED;
+            }
+            // 7. 重复下单：消息重复投递时订单已经创建，否则是同一用户的另一个订单
+            if(status == ORDER_DUPLICATE){
+                return getById(voucherOrder.getId()) != null ? OrderStatusStore.CREATED : OrderStatusStore.FAILED;
+            }
+            return OrderStatusStore.CREATED;
         } finally {
             // 释放锁
             lock.unlock();
@@ -209,18 +348,21 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     }
 
     // 下单函数 - 数据层（操作数据库）
+    @Override
     @Transactional  // 事务
-    public void createVoucher(VoucherOrder voucherOrder){
+    public int createVoucher(VoucherOrder voucherOrder){
         // 5. 一人一单
         Long userId = voucherOrder.getUserId();
         // 所以每个线程执行该方法都会新生成一个User对象，当toString的时候又新new一个String对象
         // 5.1 查询订单
-        int count = query().eq("user_id", userId).eq("voucher_id", voucherOrder).count();
+        // 已取消的订单不算，超时取消后用户可以重新抢购
+        int count = query().eq("user_id", userId).eq("voucher_id", voucherOrder.getVoucherId())
+                .ne("status", STATUS_CANCELLED).count();
         // 5.2 判断该订单是否已经存在
         if(count > 0){
-            // 用户已经购买过一单了
+            // 用户已经购买过一单了，通常是消息重复投递
             log.error("用户已经购买过一次！不允许同一个用户重复购买同一个优惠券");
-            return;
+            return ORDER_DUPLICATE;
         }
 
         // 6. 扣减库存
@@ -233,10 +375,106 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         if(!success){
             // 扣减失败
             log.error("库存不足！");
-            return;
+            return ORDER_NO_STOCK;
         }
 
         // 7. 创建订单
         save(voucherOrder);
+        // 8. 加入超时队列，事务回滚时到期的任务查不到订单，会被忽略
+        orderTimeoutQueue.schedule(voucherOrder.getId(),
+                System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(payTimeoutMinutes));
+        return ORDER_CREATED;
+    }
+
+    /**
+     * 取消超时队列中到期的未支付订单，领取由 Lua 脚本保证多实例不重复
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void cancelTimeoutOrders() {
+        try {
+            List<Long> orderIds;
+            do {
+                orderIds = orderTimeoutQueue.claimDue(TIMEOUT_BATCH_SIZE);
+                if(!orderIds.isEmpty()){
+                    cancelUnpaid(orderIds);
+                }
+            } while (orderIds.size() == TIMEOUT_BATCH_SIZE);
+        } catch (Exception e) {
+            log.error("取消超时订单异常", e);
+        }
+    }
+
+    /**
+     * 兜底：领取后实例宕机等原因漏掉的超时订单，直接按下单时间从数据库中查出来取消
+     */
+    @Scheduled(fixedDelay = 5 * 60 * 1000, initialDelay = 5 * 60 * 1000)
+    public void sweepTimeoutOrders() {
+        if(StrUtil.isBlank(timeoutSweepSince)){
+            return;
+        }
+        // 1. 多实例部署时只允许一个实例扫描
+        RLock lock = redissonClient.getLock("lock:order:timeout:sweep");
+        if(!lock.tryLock()){
+            return;
+        }
+        try {
+            // 2. 比超时队列多等 5 分钟，正常情况下这些订单已经被队列取消
+            LocalDateTime deadline = LocalDateTime.now().minusMinutes(payTimeoutMinutes + 5);
+            LocalDateTime since = LocalDateTime.parse(timeoutSweepSince);
+            List<Long> orderIds;
+            do {
+                orderIds = query().select("id")
+                        .eq("status", STATUS_UNPAID)
+                        .ge("create_time", since)
+                        .lt("create_time", deadline)
+                        .last("LIMIT " + TIMEOUT_BATCH_SIZE)
+                        .list()
+                        .stream().map(VoucherOrder::getId).collect(Collectors.toList());
+                if(!orderIds.isEmpty()){
+                    log.warn("扫描到 {} 个未被超时队列取消的订单", orderIds.size());
+                    cancelUnpaid(orderIds);
+                }
+            } while (orderIds.size() == TIMEOUT_BATCH_SIZE);
+        } catch (Exception e) {
+            log.error("扫描超时订单异常", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 取消一批订单中仍未支付的订单，归还数据库库存，提交后再归还 Redis 库存
+    private void cancelUnpaid(List<Long> orderIds) {
+        List<VoucherOrder> cancelled = transactionTemplate.execute(status -> {
+            // 1. 查询仍未支付的订单
+            List<VoucherOrder> orders = query().in("id", orderIds).eq("status", STATUS_UNPAID).list();
+            // 2. 逐个按状态条件取消，与支付并发时只有一方成功
+            List<VoucherOrder> done = new ArrayList<>(orders.size());
+            for (VoucherOrder order : orders) {
+                boolean success = update()
+                        .set("status", STATUS_CANCELLED)
+                        .eq("id", order.getId())
+                        .eq("status", STATUS_UNPAID)
+                        .update();
+                if(success){
+                    done.add(order);
+                }
+            }
+            // 3. 按秒杀券合并归还数据库库存
+            Map<Long, Long> counts = done.stream()
+                    .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+            for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+                seckillVoucherService.update()
+                        .setSql("stock = stock + " + entry.getValue())
+                        .eq("voucher_id", entry.getKey())
+                        .update();
+            }
+            return done;
+        });
+        if(cancelled == null || cancelled.isEmpty()){
+            return;
+        }
+        // 4. 一个 pipeline 归还 Redis 库存并移出订单集合，用户可以重新抢购
+        seckillStockStore.compensateAll(cancelled);
+        log.info("取消超时未支付订单 {} 个", cancelled.size());
     }
 }
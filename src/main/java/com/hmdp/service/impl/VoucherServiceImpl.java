@@ -1,5 +1,6 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
@@ -7,14 +8,17 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillStockStore;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -27,20 +31,56 @@ import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 @Service
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
 
+    // 优惠券类型：1 秒杀券
+    private static final int SECKILL_TYPE = 1;
+
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SeckillStockStore seckillStockStore;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
-        // 返回结果
+        // 1. 查询优惠券的静态信息，优先查缓存
+        String key = CACHE_VOUCHER_KEY + shopId;
+        List<Voucher> vouchers;
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if(json != null){
+            vouchers = JSONUtil.toList(json, Voucher.class);
+        }else{
+            vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(vouchers), CACHE_VOUCHER_TTL, TimeUnit.MINUTES);
+        }
+        // 2. 秒杀券的库存以 Redis 为准，一次 pipeline 查询所有秒杀券的实时库存
+        List<Voucher> seckillVouchers = vouchers.stream()
+                .filter(voucher -> Integer.valueOf(SECKILL_TYPE).equals(voucher.getType()))
+                .collect(Collectors.toList());
+        List<Integer> stocks = seckillStockStore.queryStocks(seckillVouchers.stream()
+                .map(Voucher::getId)
+                .collect(Collectors.toList()));
+        for (int i = 0; i < stocks.size(); i++) {
+            // Redis 中没有库存时保留数据库中的库存
+            if(stocks.get(i) != null){
+                seckillVouchers.get(i).setStock(stocks.get(i));
+            }
+        }
+        // 3. 返回结果
         return Result.ok(vouchers);
     }
 
+    @Override
+    public Result addVoucher(Voucher voucher) {
+        // 保存优惠券
+        save(voucher);
+        // 删除店铺的优惠券缓存
+        stringRedisTemplate.delete(CACHE_VOUCHER_KEY + voucher.getShopId());
+        return Result.ok(voucher.getId());
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -53,8 +93,9 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        // 保存秒杀库存到 Redis 中
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(),
-                                                voucher.getStock().toString());
+        // 保存秒杀库存和售卖时间到 Redis 中
+        seckillStockStore.init(seckillVoucher);
+        // 删除店铺的优惠券缓存
+        stringRedisTemplate.delete(CACHE_VOUCHER_KEY + voucher.getShopId());
     }
 }
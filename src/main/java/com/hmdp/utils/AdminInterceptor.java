@@ -0,0 +1,51 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+public class AdminInterceptor implements HandlerInterceptor {
+
+    private final Set<Long> adminIds;
+
+    public AdminInterceptor(Set<Long> adminIds) {
+        this.adminIds = adminIds;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 1. 只处理标注了 @AdminOnly 的 controller 方法或类
+        if(!(handler instanceof HandlerMethod)){
+            return true;
+        }
+        HandlerMethod method = (HandlerMethod) handler;
+        if(!method.hasMethodAnnotation(AdminOnly.class)
+                && !AnnotatedElementUtils.hasAnnotation(method.getBeanType(), AdminOnly.class)){
+            return true;
+        }
+        // 2. 未登录，返回 401
+        UserDTO user = UserHolder.getUser();
+        if(user == null){
+            response.setStatus(401);
+            return false;
+        }
+        // 3. 不是管理员，返回 403；没有配置管理员时所有人都不能调用
+        if(!adminIds.contains(user.getId())){
+            response.setStatus(403);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write(JSONUtil.toJsonStr(Result.fail("没有权限！")));
+            return false;
+        }
+        return true;
+    }
+}
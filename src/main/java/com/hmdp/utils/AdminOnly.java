@@ -0,0 +1,17 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 只允许管理员调用的接口，由 AdminInterceptor 在进入 controller 之前检查
+ * 标注在类上时对该 controller 的所有接口生效，管理员由 hmdp.admin.user-ids 配置
+ */
+@Documented
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AdminOnly {
+}
@@ -0,0 +1,62 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 把旧的 blog:liked:{blogId} zset 迁移为位图 + 有界 zset
+ * 1. 启动后定时执行，多实例部署时只有一个实例迁移
+ * 2. 迁移期间 BlogLikeStore 同时读写旧 zset，点赞功能不受影响
+ * 3. 一轮扫描没有发现旧 key 后写入完成标记，各实例读到标记后不再执行，点赞读写也不再访问旧 zset
+ */
+@Slf4j
+@Component
+public class BlogLikeMigrator {
+
+    @Value("${hmdp.blog.like-migration.enabled:true}")
+    private boolean enabled;
+
+    private final BlogLikeStore blogLikeStore;
+    private final RedissonClient redissonClient;
+
+    private volatile boolean done;
+
+    public BlogLikeMigrator(BlogLikeStore blogLikeStore, RedissonClient redissonClient) {
+        this.blogLikeStore = blogLikeStore;
+        this.redissonClient = redissonClient;
+    }
+
+    @Scheduled(fixedDelay = 10 * 60 * 1000, initialDelay = 60 * 1000)
+    public void migrate() {
+        // 1. 每个实例都检查完成标记，没有开启迁移的实例也要停止访问旧 zset
+        if(done || blogLikeStore.refreshMigrated()){
+            done = true;
+            return;
+        }
+        if(!enabled){
+            return;
+        }
+        RLock lock = redissonClient.getLock("lock:blog:like:migrate");
+        if(!lock.tryLock()){
+            return;
+        }
+        try {
+            long begin = System.currentTimeMillis();
+            int count = blogLikeStore.migrateAllFromZSet();
+            if(count == 0){
+                blogLikeStore.markMigrated();
+                done = true;
+                return;
+            }
+            log.info("blog 点赞数据迁移完成，共 {} 篇 blog，耗时 {} ms", count, System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.error("blog 点赞数据迁移失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * blog 点赞存储
+ * 1. 是否点赞：按 userId 分片的位图 blog:liked:bitmap:{blogId}:{shard}，每个分片最多 32 字节
+ * 2. 点赞列表展示：只保留最早点赞的 BLOG_LIKED_TOP_SIZE 个用户的 zset blog:liked:top:{blogId}
+ * 3. 点赞数：与 blog 卡片缓存同时创建的计数器 blog:liked:count:{blogId}，点赞时原子增减，卡片缓存不必因点赞失效
+ * 代替原来每个点赞一条记录的 zset blog:liked:{blogId}，迁移完成前读写同时兼容旧 zset，迁移由 BlogLikeMigrator 执行
+ * 迁移完成后写入标记 blog:liked:migrated，各实例读到标记后不再访问旧 zset
+ */
+@Slf4j
+@Component
+public class BlogLikeStore {
+
+    // 每个位图分片覆盖 2^8 = 256 个用户，点赞用户稀疏时每个分片只占 32 字节
+    private static final int SHARD_BITS = 8;
+    private static final long SHARD_MASK = (1L << SHARD_BITS) - 1;
+    // 迁移时每批处理的点赞记录数
+    private static final int MIGRATE_BATCH_SIZE = 1000;
+
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+    static{
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final DefaultRedisScript<Long> MIGRATE_SCRIPT;
+    static{
+        MIGRATE_SCRIPT = new DefaultRedisScript<>();
+        MIGRATE_SCRIPT.setLocation(new ClassPathResource("like_migrate.lua"));
+        MIGRATE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 旧 zset 是否已经全部迁移，只会从 false 变为 true
+    private volatile boolean migrated;
+
+    public BlogLikeStore(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    private static String bitmapKey(Long blogId, Long userId){
+        return BLOG_LIKED_BITMAP_KEY + blogId + ":" + (userId >>> SHARD_BITS);
+    }
+
+    private static long offset(Long userId){
+        return userId & SHARD_MASK;
+    }
+
+    /**
+     * 切换点赞状态
+     * @return true 表示本次操作为点赞，false 表示取消点赞
+     */
+    public boolean toggle(Long blogId, Long userId){
+        Long result = stringRedisTemplate.execute(LIKE_SCRIPT,
+                Arrays.asList(bitmapKey(blogId, userId), BLOG_LIKED_TOP_KEY + blogId, BLOG_LIKED_COUNT_KEY + blogId,
+                        BLOG_LIKED_KEY + blogId),
+                String.valueOf(offset(userId)),
+                userId.toString(),
+                String.valueOf(System.currentTimeMillis()),
+                BLOG_LIKED_TOP_SIZE.toString(),
+                migrated ? "0" : "1");
+        return result != null && result == 1L;
+    }
+
+    /**
+     * blog 卡片缓存重建时，用数据库中的点赞数重置计数器
+     */
+    public void resetLikeCount(Long blogId, Integer liked){
+        stringRedisTemplate.opsForValue().set(BLOG_LIKED_COUNT_KEY + blogId, String.valueOf(liked == null ? 0 : liked),
+                BLOG_LIKED_COUNT_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 查询实时点赞数，计数器不存在时返回 null
+     */
+    public Integer queryLikeCount(Long blogId){
+        String count = stringRedisTemplate.opsForValue().get(BLOG_LIKED_COUNT_KEY + blogId);
+        return count == null ? null : Integer.valueOf(count);
+    }
+
+    public boolean isLiked(Long blogId, Long userId){
+        return isLiked(Collections.singletonList(blogId), userId).get(0);
+    }
+
+    /**
+     * 一次 pipeline 查询用户对多篇 blog 的点赞状态，返回值与 blogIds 一一对应
+     * 位图和尚未迁移的旧 zset 任一存在点赞记录即视为已点赞
+     */
+    public List<Boolean> isLiked(List<Long> blogIds, Long userId){
+        if(blogIds.isEmpty()){
+            return Collections.emptyList();
+        }
+        long offset = offset(userId);
+        String member = userId.toString();
+        boolean legacy = !migrated;
+        List<Object> replies = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long blogId : blogIds) {
+                conn.getBit(bitmapKey(blogId, userId), offset);
+                if(legacy){
+                    conn.zScore(BLOG_LIKED_KEY + blogId, member);
+                }
+            }
+            return null;
+        });
+        int step = legacy ? 2 : 1;
+        List<Boolean> liked = new ArrayList<>(blogIds.size());
+        for (int i = 0; i < blogIds.size(); i++) {
+            liked.add(Boolean.TRUE.equals(replies.get(step * i)) || (legacy && replies.get(step * i + 1) != null));
+        }
+        return liked;
+    }
+
+    /**
+     * 查询最早点赞的前 count 个用户id，count 不能超过 BLOG_LIKED_TOP_SIZE
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> queryEarliestLikers(Long blogId, int count){
+        // 1. 有界 zset 和尚未迁移的旧 zset 各取最早的 count 个
+        boolean legacy = !migrated;
+        List<Object> replies = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.zRangeWithScores(BLOG_LIKED_TOP_KEY + blogId, 0, count - 1);
+            if(legacy){
+                conn.zRangeWithScores(BLOG_LIKED_KEY + blogId, 0, count - 1);
+            }
+            return null;
+        });
+        // 2. 按点赞时间合并，同一用户只保留一次
+        List<ZSetOperations.TypedTuple<String>> tuples = new ArrayList<>();
+        for (Object reply : replies) {
+            if(reply != null){
+                tuples.addAll((Set<ZSetOperations.TypedTuple<String>>) reply);
+            }
+        }
+        return tuples.stream()
+                .sorted(Comparator.comparing(ZSetOperations.TypedTuple::getScore))
+                .map(tuple -> Long.valueOf(tuple.getValue()))
+                .distinct()
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 读取迁移完成标记，读到后本实例不再访问旧 zset
+     */
+    public boolean refreshMigrated(){
+        if(!migrated && Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKED_MIGRATED_KEY))){
+            migrated = true;
+        }
+        return migrated;
+    }
+
+    /**
+     * 所有旧 zset 迁移完成后写入标记
+     */
+    public void markMigrated(){
+        stringRedisTemplate.opsForValue().set(BLOG_LIKED_MIGRATED_KEY, "1");
+        migrated = true;
+    }
+
+    /**
+     * 把一篇 blog 的旧点赞 zset 迁移到位图 + 有界 zset，迁移过程中可以正常点赞和取消点赞
+     * @return 迁移的点赞数
+     */
+    public long migrateFromZSet(Long blogId){
+        String oldKey = BLOG_LIKED_KEY + blogId;
+        String topKey = BLOG_LIKED_TOP_KEY + blogId;
+        long migrated = 0;
+        // 1. 按分数（点赞时间）从早到晚分批读取，迁移后的用户会从旧 zset 中删除，每次都从头读取
+        for (long read = 0; ; read += MIGRATE_BATCH_SIZE) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .rangeWithScores(oldKey, 0, MIGRATE_BATCH_SIZE - 1);
+            if(tuples == null || tuples.isEmpty()){
+                break;
+            }
+            // 2. 一批在脚本中原子写入位图并从旧 zset 删除，最早的一批同时写入有界 zset
+            List<String> keys = new ArrayList<>(tuples.size() + 2);
+            List<String> args = new ArrayList<>(tuples.size() * 3 + 2);
+            keys.add(oldKey);
+            keys.add(topKey);
+            args.add(BLOG_LIKED_TOP_SIZE.toString());
+            args.add(read < BLOG_LIKED_TOP_SIZE ? "1" : "0");
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                Long userId = Long.valueOf(tuple.getValue());
+                keys.add(bitmapKey(blogId, userId));
+                args.add(String.valueOf(offset(userId)));
+                args.add(tuple.getValue());
+                args.add(String.valueOf(tuple.getScore().longValue()));
+            }
+            Long count = stringRedisTemplate.execute(MIGRATE_SCRIPT, keys, args.toArray());
+            migrated += count == null ? 0 : count;
+        }
+        return migrated;
+    }
+
+    /**
+     * 扫描所有旧格式的 blog:liked:{blogId} zset 并逐个迁移
+     * @return 迁移的 blog 数
+     */
+    public int migrateAllFromZSet(){
+        // 1. SCAN 出旧 key，新格式的 key 也以 blog:liked: 开头，需要按后缀是否为纯数字过滤
+        List<Long> blogIds = stringRedisTemplate.execute((RedisCallback<List<Long>>) connection -> {
+            List<Long> ids = new ArrayList<>();
+            ScanOptions options = ScanOptions.scanOptions().match(BLOG_LIKED_KEY + "*").count(1000).build();
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (cursor.hasNext()) {
+                    String suffix = new String(cursor.next(), StandardCharsets.UTF_8).substring(BLOG_LIKED_KEY.length());
+                    if(suffix.matches("\\d+")){
+                        ids.add(Long.valueOf(suffix));
+                    }
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return ids;
+        });
+        if(blogIds == null){
+            return 0;
+        }
+        // 2. 逐个迁移
+        int count = 0;
+        for (Long blogId : blogIds) {
+            if(stringRedisTemplate.type(BLOG_LIKED_KEY + blogId) != DataType.ZSET){
+                continue;
+            }
+            long migrated = migrateFromZSet(blogId);
+            log.info("blog {} 点赞数据迁移完成，共 {} 条", blogId, migrated);
+            count++;
+        }
+        return count;
+    }
+}
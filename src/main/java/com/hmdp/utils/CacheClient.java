@@ -23,8 +23,30 @@ public class CacheClient {
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    private final HotKeyCache hotKeyCache;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, HotKeyCache hotKeyCache) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.hotKeyCache = hotKeyCache;
+    }
+
+    // 删除缓存，同时清除本实例的热点 key 本地缓存
+    public void delete(String key){
+        stringRedisTemplate.delete(key);
+        hotKeyCache.invalidate(key);
+    }
+
+    // 读取缓存：记录访问频率，热点 key 先查本地缓存，未命中再查 redis 并回填本地缓存
+    private String get(String key){
+        boolean hot = hotKeyCache.record(key);
+        String json = hot ? hotKeyCache.getLocal(key) : null;
+        if(json == null){
+            json = stringRedisTemplate.opsForValue().get(key);
+            if(hot && json != null){
+                hotKeyCache.putLocal(key, json);
+            }
+        }
+        return json;
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit){
@@ -49,7 +71,7 @@ public class CacheClient {
             Long time, TimeUnit unit){
         String key = keyPrefix + id;
         // 1. 从 redis 查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        String json = get(key);
         // 2. 判断是否存在
         if(StrUtil.isNotBlank((json))){  // 空字符串 “” 也会返回 false
             // 3. 存在，直接返回
@@ -94,7 +116,7 @@ public class CacheClient {
                                             Long time, TimeUnit unit){
         String key = keyPrefix + id;
         // 1. 从 redis 查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        String json = get(key);
         // 2. 判断是否命中缓存
         if(StrUtil.isBlank((json))){
             // 3. 未命中，直接返回空
@@ -0,0 +1,182 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 启动时的缓存预热，在 Web 服务器开始监听端口之前执行，预热完成前不接收请求
+ * 1. 按销量取前 N 个店铺写入店铺缓存
+ * 2. 未结束的秒杀券库存和售卖时间写入 Redis，已存在的库存不覆盖
+ * 3. 所有类型的店铺 GEO 数据
+ * 各数据源并行加载，每个数据源内分批 pipeline 写入
+ */
+@Slf4j
+@Component
+public class CacheWarmer implements SmartLifecycle {
+
+    // 每个 pipeline 写入的 key 数
+    private static final int BATCH_SIZE = 500;
+    // 生命周期阶段早于启动 Web 服务器的 WebServerStartStopLifecycle（Integer.MAX_VALUE - 1）
+    private static final int PHASE = Integer.MAX_VALUE - 2;
+
+    @Value("${hmdp.warmup.enabled:true}")
+    private boolean enabled;
+
+    // 预热的热门店铺数，0 表示不预热店铺
+    @Value("${hmdp.warmup.shop-top-n:1000}")
+    private int shopTopN;
+
+    // 店铺缓存格式：pass-through 对应 queryWithPassThrough，logical-expire 对应 queryWithLogicalExpire
+    @Value("${hmdp.warmup.shop-format:pass-through}")
+    private String shopFormat;
+
+    @Value("${hmdp.warmup.seckill-stock:true}")
+    private boolean seckillStock;
+
+    @Value("${hmdp.warmup.geo:true}")
+    private boolean geo;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ShopMapper shopMapper;
+    private final SeckillVoucherMapper seckillVoucherMapper;
+    private final ShopGeoSync shopGeoSync;
+    private final SeckillStockStore seckillStockStore;
+
+    private volatile boolean running;
+
+    public CacheWarmer(StringRedisTemplate stringRedisTemplate, ShopMapper shopMapper,
+                       SeckillVoucherMapper seckillVoucherMapper, ShopGeoSync shopGeoSync,
+                       SeckillStockStore seckillStockStore) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shopMapper = shopMapper;
+        this.seckillVoucherMapper = seckillVoucherMapper;
+        this.shopGeoSync = shopGeoSync;
+        this.seckillStockStore = seckillStockStore;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if(!enabled){
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // 1. 各数据源并行预热，单个数据源失败不影响其他数据源和应用启动
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            if(shopTopN > 0){
+                futures.add(CompletableFuture.runAsync(() -> warm("热门店铺", this::warmShops), executor));
+            }
+            if(seckillStock){
+                futures.add(CompletableFuture.runAsync(() -> warm("秒杀库存", this::warmSeckillStock), executor));
+            }
+            if(geo){
+                futures.add(CompletableFuture.runAsync(() -> warm("店铺 GEO", shopGeoSync::loadAll), executor));
+            }
+            // 2. 等待全部完成后再启动 Web 服务器
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+        log.info("缓存预热完成，耗时 {} ms", System.currentTimeMillis() - begin);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void warm(String name, WarmTask task) {
+        long begin = System.currentTimeMillis();
+        try {
+            int count = task.run();
+            log.info("缓存预热 [{}] 完成，共 {} 条，耗时 {} ms", name, count, System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.error("缓存预热 [{}] 失败", name, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WarmTask {
+        int run();
+    }
+
+    /**
+     * 按销量取前 N 个店铺，写成 queryById 读取的缓存格式
+     */
+    int warmShops() {
+        List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                .orderByDesc("sold")
+                .last("LIMIT " + shopTopN));
+        boolean logicalExpire = "logical-expire".equals(shopFormat);
+        int done = 0;
+        for (int i = 0; i < shops.size(); i += BATCH_SIZE) {
+            List<Shop> batch = shops.subList(i, Math.min(i + BATCH_SIZE, shops.size()));
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Shop shop : batch) {
+                    String key = CACHE_SHOP_KEY + shop.getId();
+                    // TTL 加随机值，避免预热的 key 同时过期
+                    long ttl = TimeUnit.MINUTES.toSeconds(CACHE_SHOP_TTL) + RandomUtil.randomInt(300);
+                    if(logicalExpire){
+                        RedisData redisData = new RedisData();
+                        redisData.setData(shop);
+                        redisData.setExpireTime(LocalDateTime.now().plusSeconds(ttl));
+                        conn.set(key, JSONUtil.toJsonStr(redisData));
+                    }else{
+                        conn.setEx(key, ttl, JSONUtil.toJsonStr(shop));
+                    }
+                }
+                return null;
+            });
+            done += batch.size();
+            log.debug("缓存预热 [热门店铺] 进度 {}/{}", done, shops.size());
+        }
+        return shops.size();
+    }
+
+    /**
+     * 未结束的秒杀券库存和售卖时间，已存在的库存不覆盖，不影响运行中已经扣减过的库存
+     */
+    int warmSeckillStock() {
+        List<SeckillVoucher> vouchers = seckillVoucherMapper.selectList(new QueryWrapper<SeckillVoucher>()
+                .gt("end_time", LocalDateTime.now()));
+        for (int i = 0; i < vouchers.size(); i += BATCH_SIZE) {
+            seckillStockStore.initAll(vouchers.subList(i, Math.min(i + BATCH_SIZE, vouchers.size())));
+        }
+        return vouchers.size();
+    }
+}
@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.StrUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * 游标（keyset）分页工具：把上一页最后一条记录的排序键编码为对客户端不透明的字符串
+ */
+public class CursorUtils {
+
+    private static final String SEPARATOR = ":";
+
+    public static String encode(long... values){
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if(i > 0){
+                sb.append(SEPARATOR);
+            }
+            sb.append(values[i]);
+        }
+        return Base64.encodeUrlSafe(sb.toString());
+    }
+
+    /**
+     * 解析游标
+     * @param cursor 客户端传回的游标
+     * @param size 游标中排序键的个数
+     * @return 排序键，游标为空时返回 null（按第一页处理）
+     * @throws IllegalArgumentException 游标不合法（被篡改或截断），不能按第一页处理，否则客户端会重复拉取
+     */
+    public static long[] decode(String cursor, int size){
+        if(StrUtil.isBlank(cursor)){
+            return null;
+        }
+        String[] parts;
+        try {
+            parts = Base64.decodeStr(cursor, StandardCharsets.UTF_8).split(SEPARATOR);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("游标不合法：" + cursor, e);
+        }
+        if(parts.length != size){
+            throw new IllegalArgumentException("游标不合法：" + cursor);
+        }
+        long[] values = new long[size];
+        for (int i = 0; i < size; i++) {
+            try {
+                values[i] = Long.parseLong(parts[i]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("游标不合法：" + cursor, e);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 游标为空（第一页）或可以正常解析时返回 true
+     */
+    public static boolean isValid(String cursor, int size){
+        try {
+            decode(cursor, size);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public static long toMillis(LocalDateTime time){
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public static LocalDateTime fromMillis(long millis){
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,88 @@
+package com.hmdp.utils;
+
+/**
+ * 地理位置工具：geohash 编码与球面距离
+ */
+public class GeoUtils {
+
+    // 与 Redis GEO 使用的地球半径一致，单位：米
+    public static final double EARTH_RADIUS = 6372797.560856;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    /**
+     * 两点之间的球面距离（haversine），与 Redis GEODIST 的算法一致
+     * @return 距离，单位：米
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1), lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v)));
+    }
+
+    /**
+     * 计算坐标所在的 geohash 格子
+     * @param x 经度
+     * @param y 纬度
+     * @param precision geohash 长度，6 位约为 1.2km x 0.6km
+     */
+    public static String geohash(double x, double y, int precision) {
+        double minX = -180, maxX = 180, minY = -90, maxY = 90;
+        StringBuilder sb = new StringBuilder(precision);
+        boolean even = true;
+        int bit = 0, ch = 0;
+        while (sb.length() < precision) {
+            if(even){
+                double mid = (minX + maxX) / 2;
+                if(x >= mid){
+                    ch = (ch << 1) | 1;
+                    minX = mid;
+                }else{
+                    ch <<= 1;
+                    maxX = mid;
+                }
+            }else{
+                double mid = (minY + maxY) / 2;
+                if(y >= mid){
+                    ch = (ch << 1) | 1;
+                    minY = mid;
+                }else{
+                    ch <<= 1;
+                    maxY = mid;
+                }
+            }
+            even = !even;
+            if(++bit == 5){
+                sb.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 解析 geohash 格子的范围
+     * @return {minX, minY, maxX, maxY}
+     */
+    public static double[] geohashBounds(String geohash) {
+        double minX = -180, maxX = 180, minY = -90, maxY = 90;
+        boolean even = true;
+        for (int i = 0; i < geohash.length(); i++) {
+            int ch = BASE32.indexOf(geohash.charAt(i));
+            for (int mask = 16; mask > 0; mask >>= 1) {
+                boolean high = (ch & mask) != 0;
+                if(even){
+                    double mid = (minX + maxX) / 2;
+                    if(high) minX = mid; else maxX = mid;
+                }else{
+                    double mid = (minY + maxY) / 2;
+                    if(high) minY = mid; else maxY = mid;
+                }
+                even = !even;
+            }
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+}
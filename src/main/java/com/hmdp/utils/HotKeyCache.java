@@ -0,0 +1,181 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+
+/**
+ * 热点 key 探测与本地缓存
+ * 1. 每次访问计入 count-min sketch（4 行计数器，CAS 自增，无锁），每个窗口结束时所有计数减半（TinyLFU 式衰减）
+ * 2. 估计值较高的 key 作为候选，窗口结束时从候选中选出 top-K
+ * 3. 估计值超过阈值的 key 晋升为热点，读取时先查本地缓存（短 TTL），低于阈值一半时降级并清除本地缓存
+ */
+@Slf4j
+@Component
+public class HotKeyCache {
+
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1 << 16;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    // 一个窗口内访问次数达到该值晋升为热点 key
+    @Value("${hmdp.hot-key.threshold:500}")
+    private int threshold = 500;
+
+    @Value("${hmdp.hot-key.top-k:20}")
+    private int topK = 20;
+
+    // 热点 key 本地缓存的有效期
+    @Value("${hmdp.hot-key.local-ttl-ms:2000}")
+    private long localTtlMillis = 2000;
+
+    private final AtomicIntegerArray sketch = new AtomicIntegerArray(DEPTH * WIDTH);
+
+    // 候选 key 及其最近一次的估计值
+    private final Map<String, Integer> candidates = new ConcurrentHashMap<>();
+
+    private final Set<String> hotKeys = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, LocalValue> localCache = new ConcurrentHashMap<>();
+
+    private volatile List<HotKey> top = Collections.emptyList();
+
+    /**
+     * 记录一次访问
+     * @return 该 key 当前是否为热点 key
+     */
+    public boolean record(String key) {
+        int estimate = increment(key);
+        if(estimate >= candidateThreshold()){
+            candidates.put(key, estimate);
+        }
+        return hotKeys.contains(key);
+    }
+
+    /**
+     * 查询热点 key 的本地缓存，未命中或已过期返回 null
+     */
+    public String getLocal(String key) {
+        LocalValue value = localCache.get(key);
+        if(value == null || value.expireAt < System.currentTimeMillis()){
+            return null;
+        }
+        return value.json;
+    }
+
+    public void putLocal(String key, String json) {
+        if(hotKeys.contains(key)){
+            localCache.put(key, new LocalValue(json, System.currentTimeMillis() + localTtlMillis));
+        }
+    }
+
+    public void invalidate(String key) {
+        localCache.remove(key);
+    }
+
+    public List<HotKey> topKeys() {
+        return top;
+    }
+
+    /**
+     * 窗口结束：计算 top-K，晋升、降级热点 key，计数衰减
+     */
+    @Scheduled(fixedDelayString = "${hmdp.hot-key.window-ms:10000}")
+    public void rotate() {
+        // 1. 候选 key 按当前估计值排序
+        List<HotKey> ranked = new ArrayList<>(candidates.size());
+        for (String key : candidates.keySet()) {
+            int estimate = estimate(key);
+            // 2. 晋升与降级，降级阈值为晋升阈值的一半，避免在阈值附近反复切换
+            if(estimate >= threshold){
+                if(hotKeys.add(key)){
+                    log.info("热点 key 晋升：{}，估计访问次数 {}", key, estimate);
+                }
+            }else if(estimate < threshold / 2 && hotKeys.remove(key)){
+                localCache.remove(key);
+                log.info("热点 key 降级：{}，估计访问次数 {}", key, estimate);
+            }
+            ranked.add(new HotKey(key, estimate, hotKeys.contains(key)));
+        }
+        ranked.sort((a, b) -> Integer.compare(b.getEstimate(), a.getEstimate()));
+        top = Collections.unmodifiableList(new ArrayList<>(ranked.subList(0, Math.min(topK, ranked.size()))));
+        // 3. 所有计数减半
+        for (int i = 0; i < sketch.length(); i++) {
+            if(sketch.get(i) != 0){
+                sketch.updateAndGet(i, v -> v >>> 1);
+            }
+        }
+        // 4. 衰减后不再满足条件的候选移除，已降级的热点 key 不会残留在候选中
+        candidates.keySet().removeIf(key -> !hotKeys.contains(key) && estimate(key) < candidateThreshold());
+        localCache.values().removeIf(value -> value.expireAt < System.currentTimeMillis());
+    }
+
+    private int candidateThreshold() {
+        return Math.max(1, threshold / 4);
+    }
+
+    private int increment(String key) {
+        int h = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int i = index(h, row);
+            int current;
+            do {
+                current = sketch.get(i);
+            } while (current != Integer.MAX_VALUE && !sketch.compareAndSet(i, current, current + 1));
+            min = Math.min(min, current == Integer.MAX_VALUE ? current : current + 1);
+        }
+        return min;
+    }
+
+    private int estimate(String key) {
+        int h = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, sketch.get(index(h, row)));
+        }
+        return min;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    // 每行用不同的种子重新混合，映射到该行的计数器
+    private static int index(int h, int row) {
+        int x = (h ^ SEEDS[row]) * 0x9E3779B1;
+        x ^= x >>> 15;
+        return row * WIDTH + (x & (WIDTH - 1));
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class HotKey {
+        private String key;
+        // 当前窗口的估计访问次数
+        private Integer estimate;
+        // 是否已晋升为热点 key（使用本地缓存）
+        private Boolean promoted;
+    }
+
+    @AllArgsConstructor
+    private static class LocalValue {
+        final String json;
+        final long expireAt;
+    }
+}
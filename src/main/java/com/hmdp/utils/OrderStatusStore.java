@@ -0,0 +1,78 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_KEY;
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_TTL;
+
+/**
+ * 异步下单的处理结果，供客户端轮询
+ * order:status:{orderId} 为 hash：userId 下单用户，state 处理状态
+ * seckill.lua 写入 queued，stream 消费者处理完一批消息后与 XACK、XDEL 在同一个 pipeline 中写入 created 或 failed
+ * 每次写入都同时写 userId，记录过期后重新创建的 hash 也能校验下单用户
+ */
+@Component
+public class OrderStatusStore {
+
+    public static final String STATE_FIELD = "state";
+    public static final String USER_FIELD = "userId";
+
+    public static final String QUEUED = "queued";
+    public static final String CREATED = "created";
+    public static final String FAILED = "failed";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public OrderStatusStore(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 查询处理结果
+     * @return userId、state，记录不存在或已过期时为空
+     */
+    public Map<Object, Object> get(Long orderId) {
+        return stringRedisTemplate.opsForHash().entries(ORDER_STATUS_KEY + orderId);
+    }
+
+    /**
+     * 一个 pipeline 内写入一批订单的处理结果，确认并删除消息
+     * @param states orderId -> 处理结果
+     * @param users orderId -> 下单用户id
+     * @param recordIds 已处理完的消息
+     */
+    public void complete(Map<Long, String> states, Map<Long, Long> users, String queueName, String group,
+                         List<RecordId> recordIds) {
+        if(states.isEmpty() && recordIds.isEmpty()){
+            return;
+        }
+        long ttl = TimeUnit.MINUTES.toSeconds(ORDER_STATUS_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Map.Entry<Long, String> entry : states.entrySet()) {
+                String key = ORDER_STATUS_KEY + entry.getKey();
+                Map<String, String> fields = new HashMap<>(2);
+                fields.put(STATE_FIELD, entry.getValue());
+                fields.put(USER_FIELD, String.valueOf(users.get(entry.getKey())));
+                conn.hMSet(key, fields);
+                conn.expire(key, ttl);
+            }
+            if(!recordIds.isEmpty()){
+                RecordId[] ids = recordIds.toArray(new RecordId[0]);
+                conn.xAck(queueName, group, ids);
+                // 确认后删除，队列长度只包含积压的消息
+                conn.xDel(queueName, ids);
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.ORDER_TIMEOUT_CURSOR_KEY;
+import static com.hmdp.utils.RedisConstants.ORDER_TIMEOUT_KEY;
+
+/**
+ * 订单超时的延时队列
+ * 按截止时间所在的分钟分桶，每个桶是一个 list：添加任务只需一次 RPUSH，复杂度 O(1)，与待处理任务总数无关
+ * 到期任务由 Lua 脚本按分钟顺序原子地领取，多实例之间不会重复领取
+ */
+@Component
+public class OrderTimeoutQueue {
+
+    private static final long BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // 游标不存在时，从一天前开始查找到期任务
+    private static final long INITIAL_LOOKBACK_BUCKETS = TimeUnit.DAYS.toMinutes(1);
+
+    // 脚本返回逗号分隔的订单id
+    private static final DefaultRedisScript<String> CLAIM_SCRIPT;
+    static{
+        CLAIM_SCRIPT = new DefaultRedisScript<>();
+        CLAIM_SCRIPT.setLocation(new ClassPathResource("order_timeout_claim.lua"));
+        CLAIM_SCRIPT.setResultType(String.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public OrderTimeoutQueue(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 添加超时任务
+     * @param deadline 截止时间（毫秒）
+     */
+    public void schedule(Long orderId, long deadline) {
+        stringRedisTemplate.opsForList().rightPush(ORDER_TIMEOUT_KEY + deadline / BUCKET_MILLIS, orderId.toString());
+    }
+
+    /**
+     * 领取截止时间已过的任务，截止时间所在的分钟整体结束后才会被领取
+     * @return 订单id
+     */
+    public List<Long> claimDue(int limit) {
+        long due = System.currentTimeMillis() / BUCKET_MILLIS - 1;
+        String ids = stringRedisTemplate.execute(CLAIM_SCRIPT,
+                Collections.singletonList(ORDER_TIMEOUT_CURSOR_KEY),
+                String.valueOf(due),
+                String.valueOf(limit),
+                ORDER_TIMEOUT_KEY,
+                String.valueOf(due - INITIAL_LOOKBACK_BUCKETS));
+        if(StrUtil.isEmpty(ids)){
+            return Collections.emptyList();
+        }
+        return Arrays.stream(ids.split(",")).map(Long::valueOf).collect(Collectors.toList());
+    }
+}
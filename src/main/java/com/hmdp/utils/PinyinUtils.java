@@ -0,0 +1,65 @@
+package com.hmdp.utils;
+
+import java.nio.charset.Charset;
+
+/**
+ * 汉字拼音首字母
+ * GB2312 一级汉字（3755 个常用字）按拼音排序，根据 GB2312 编码所在的区间即可确定首字母，不需要额外的拼音库
+ * 二级汉字按部首排序，无法用此方法确定首字母，直接忽略
+ */
+public class PinyinUtils {
+
+    private static final Charset GB2312 = Charset.forName("GB2312");
+
+    // 各首字母第一个汉字的 GB2312 编码，没有以 i、u、v 开头的拼音
+    private static final int[] BOUNDARIES = {
+            45217, 45253, 45761, 46318, 46826, 47010, 47297, 47614, 48119, 49062, 49324, 49896,
+            50371, 50614, 50622, 50906, 51387, 51446, 52218, 52698, 52980, 53689, 54481
+    };
+    private static final char[] LETTERS = "abcdefghjklmnopqrstwxyz".toCharArray();
+    // GB2312 一级汉字的最后一个字“座”
+    private static final int LAST_LEVEL1 = 55289;
+
+    /**
+     * 取拼音首字母，例如 “茶餐厅” -> “cct”，字母和数字原样保留（转小写），其他字符忽略
+     */
+    public static String initials(String text) {
+        if(text == null){
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c < 128){
+                if(Character.isLetterOrDigit(c)){
+                    sb.append(Character.toLowerCase(c));
+                }
+                continue;
+            }
+            char initial = initial(c);
+            if(initial != 0){
+                sb.append(initial);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 单个汉字的拼音首字母，无法确定时返回 0
+     */
+    public static char initial(char c) {
+        byte[] bytes = String.valueOf(c).getBytes(GB2312);
+        if(bytes.length != 2){
+            return 0;
+        }
+        int code = ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+        if(code < BOUNDARIES[0] || code > LAST_LEVEL1){
+            return 0;
+        }
+        int i = BOUNDARIES.length - 1;
+        while (code < BOUNDARIES[i]) {
+            i--;
+        }
+        return LETTERS[i];
+    }
+}
@@ -0,0 +1,51 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 接口限流，由 RateLimitInterceptor 在进入 controller 之前检查，超过限制直接返回 429
+ * 令牌桶：容量为 permits，每 period 秒补满 permits 个令牌
+ * 可重复标注，例如同时按用户和按 IP 限流
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(RateLimit.List.class)
+public @interface RateLimit {
+
+    /**
+     * 限流名称，用于区分不同接口的令牌桶和统计
+     */
+    String name();
+
+    /**
+     * 限流维度
+     */
+    Dimension by();
+
+    int permits();
+
+    /**
+     * 补满令牌的时间，单位：秒
+     */
+    long period() default 1;
+
+    enum Dimension {
+        // 登录用户，未登录的请求不受该规则限制
+        USER,
+        // 客户端 IP
+        IP
+    }
+
+    @Documented
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface List {
+        RateLimit[] value();
+    }
+}
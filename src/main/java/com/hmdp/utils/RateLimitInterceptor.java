@@ -0,0 +1,56 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 1. 只处理标注了 @RateLimit 的 controller 方法
+        if(!(handler instanceof HandlerMethod)){
+            return true;
+        }
+        Set<RateLimit> limits = AnnotatedElementUtils.findMergedRepeatableAnnotations(
+                ((HandlerMethod) handler).getMethod(), RateLimit.class);
+        // 2. 逐个规则检查，任意一个超限就拒绝
+        for (RateLimit limit : limits) {
+            String identity = identity(limit.by(), request);
+            if(identity == null || rateLimiter.tryAcquire(limit, identity)){
+                continue;
+            }
+            // 3. 超限，返回 429
+            response.setStatus(429);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write(JSONUtil.toJsonStr(Result.fail("请求过于频繁，请稍后再试！")));
+            return false;
+        }
+        return true;
+    }
+
+    private static String identity(RateLimit.Dimension by, HttpServletRequest request) {
+        if(by == RateLimit.Dimension.USER){
+            UserDTO user = UserHolder.getUser();
+            return user == null ? null : user.getId().toString();
+        }
+        // 不信任客户端可以伪造的 X-Forwarded-For，部署在代理之后时由容器的 RemoteIpValve 还原真实 IP
+        return request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,158 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * 两级令牌桶限流
+ * 1. 本实例的令牌桶：与集群令牌桶的参数相同，本实例已经超限的请求一定会被集群拒绝，直接拒绝，不访问 Redis
+ * 2. Redis 中的令牌桶（rate_limit.lua）：集群内所有实例共享的限制
+ * Redis 不可用时放行，只按本实例的令牌桶限流
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+    static{
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 本实例的令牌桶，key 与 Redis 中的 key 相同
+    private final Map<String, TokenBucket> localBuckets = new ConcurrentHashMap<>();
+
+    // 按限流名称统计
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public RateLimiter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 尝试获取一个令牌
+     * @param identity 用户id 或 IP
+     * @return 是否放行
+     */
+    public boolean tryAcquire(RateLimit limit, String identity) {
+        Counter counter = counters.computeIfAbsent(limit.name(), name -> new Counter());
+        String key = RATE_LIMIT_KEY + limit.name() + ":" + limit.by().name().toLowerCase() + ":" + identity;
+        long periodMillis = TimeUnit.SECONDS.toMillis(limit.period());
+        double rate = (double) limit.permits() / periodMillis;
+        long now = System.currentTimeMillis();
+        // 1. 本实例的令牌桶
+        TokenBucket bucket = localBuckets.computeIfAbsent(key,
+                k -> new TokenBucket(limit.permits(), rate, periodMillis, now));
+        if(!bucket.tryAcquire(now)){
+            counter.rejectedLocal.increment();
+            return false;
+        }
+        // 2. 集群令牌桶
+        try {
+            Long allowed = stringRedisTemplate.execute(RATE_LIMIT_SCRIPT,
+                    Collections.singletonList(key),
+                    String.valueOf(limit.permits()),
+                    String.valueOf(rate),
+                    String.valueOf(now));
+            if(allowed != null && allowed == 0L){
+                counter.rejectedRedis.increment();
+                return false;
+            }
+        } catch (Exception e) {
+            counter.failOpen.increment();
+            log.warn("限流访问 Redis 失败，放行：{}", e.getMessage());
+        }
+        counter.allowed.increment();
+        return true;
+    }
+
+    /**
+     * 各限流规则的统计
+     */
+    public List<Metrics> metrics() {
+        List<Metrics> result = new ArrayList<>(counters.size());
+        counters.forEach((name, counter) -> result.add(new Metrics(name,
+                counter.allowed.sum(), counter.rejectedLocal.sum(), counter.rejectedRedis.sum(), counter.failOpen.sum())));
+        return result;
+    }
+
+    /**
+     * 清理已经补满的本实例令牌桶，避免按用户、IP 创建的令牌桶无限增长
+     */
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void evictIdleBuckets() {
+        long now = System.currentTimeMillis();
+        localBuckets.entrySet().removeIf(entry -> entry.getValue().isIdle(now));
+    }
+
+    private static class TokenBucket {
+        private final int capacity;
+        private final double rate;
+        private final long periodMillis;
+        private double tokens;
+        private long ts;
+
+        TokenBucket(int capacity, double rate, long periodMillis, long now) {
+            this.capacity = capacity;
+            this.rate = rate;
+            this.periodMillis = periodMillis;
+            this.tokens = capacity;
+            this.ts = now;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            if(now > ts){
+                tokens = Math.min(capacity, tokens + (now - ts) * rate);
+                ts = now;
+            }
+            if(tokens < 1){
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        synchronized boolean isIdle(long now) {
+            return now - ts >= periodMillis;
+        }
+    }
+
+    private static class Counter {
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder rejectedLocal = new LongAdder();
+        private final LongAdder rejectedRedis = new LongAdder();
+        private final LongAdder failOpen = new LongAdder();
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Metrics {
+        private String name;
+        private long allowed;
+        // 被本实例令牌桶拒绝的请求数
+        private long rejectedLocal;
+        // 被集群令牌桶拒绝的请求数
+        private long rejectedRedis;
+        // Redis 不可用时放行的请求数
+        private long failOpen;
+    }
+}
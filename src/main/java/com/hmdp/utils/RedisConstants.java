@@ -10,13 +10,51 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final Long CACHE_SHOP_NEARBY_TTL = 60L;
+    public static final String CACHE_SHOP_NEARBY_KEY = "cache:shop:nearby:";
+    public static final int CACHE_SHOP_NEARBY_PRECISION = 6;
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+
+    public static final Long CACHE_COMMENTS_TTL = 10L;
+    public static final String CACHE_COMMENTS_KEY = "cache:comments:";
+
+    public static final Long CACHE_VOUCHER_TTL = 30L;
+    public static final String CACHE_VOUCHER_KEY = "cache:voucher:";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    // 与 seckill.lua 中的订单 key 一致，没有冒号
+    public static final String SECKILL_ORDER_KEY = "seckill:order";
+    public static final String SECKILL_QUEUE_KEY = "seckill:queue:";
+    public static final String SECKILL_SUSPECT_KEY = "seckill:suspect:";
+    public static final Long SECKILL_SUSPECT_TTL = 60L;
+    public static final String ORDER_STATUS_KEY = "order:status:";
+    public static final Long ORDER_STATUS_TTL = 30L;
+    public static final String ORDER_TIMEOUT_KEY = "order:timeout:";
+    public static final String ORDER_TIMEOUT_CURSOR_KEY = "order:timeout:cursor";
+
+    public static final String RATE_LIMIT_KEY = "rate:limit:";
+
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKED_BITMAP_KEY = "blog:liked:bitmap:";
+    public static final String BLOG_LIKED_TOP_KEY = "blog:liked:top:";
+    public static final Long BLOG_LIKED_TOP_SIZE = 20L;
+    // 旧点赞 zset 全部迁移完成的标记
+    public static final String BLOG_LIKED_MIGRATED_KEY = "blog:liked:migrated";
+    public static final String BLOG_LIKED_COUNT_KEY = "blog:liked:count:";
+    // 比 blog 卡片缓存多保留一段时间，保证卡片缓存存在时计数器也存在
+    public static final Long BLOG_LIKED_COUNT_TTL = CACHE_BLOG_TTL + 5;
+    public static final String BLOG_COMMENTS_DELTA_KEY = "blog:comments:delta";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_CHANGED_CHANNEL = "shop:changed";
+    public static final String SHOP_TYPE_REFRESH_CHANNEL = "shop-type:refresh";
     public static final String USER_SIGN_KEY = "sign:";
 }
@@ -1,6 +1,5 @@
 package com.hmdp.utils;
 
-import com.sun.org.glassfish.external.statistics.CountStatistic;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
@@ -40,4 +39,11 @@ public class RedisIdWorker {
         return timestamp << COUNT_BITS | count;
     }
 
+    /**
+     * 从 id 中解析生成时间，与 nextId 一样按 UTC 换算，与 LocalDateTime.now() 可直接比较
+     */
+    public static LocalDateTime createTime(long id){
+        return LocalDateTime.ofEpochSecond((id >>> COUNT_BITS) + BEGIN_TIMESTAMP, 0, ZoneOffset.UTC);
+    }
+
 }
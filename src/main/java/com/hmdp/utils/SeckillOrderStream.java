@@ -0,0 +1,225 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_KEY;
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_TTL;
+
+/**
+ * 秒杀下单消息队列 stream.orders 的运维操作
+ * 1. 消费者确认消息后立即 XDEL，队列长度就是积压量，由 seckill.lua 按长度限流，队列不会无限增长
+ * 2. 多次投递仍然失败的消息移入死信队列 stream.orders.dlq，不再阻塞后续消息，可以查看和重放
+ * 3. 积压指标：队列长度、未确认数、最早消息的等待时间
+ */
+@Slf4j
+@Component
+public class SeckillOrderStream {
+
+    public static final String STREAM_KEY = "stream.orders";
+    public static final String DLQ_KEY = "stream.orders.dlq";
+    public static final String GROUP = "g1";
+
+    // 订单消息的字段
+    private static final String[] ORDER_FIELDS = {"userId", "voucherId", "id"};
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public SeckillOrderStream(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 查询消息已经投递的次数，消息已确认时返回 0
+     */
+    public long deliveryCount(RecordId recordId) {
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(STREAM_KEY, GROUP, Range.closed(recordId.getValue(), recordId.getValue()), 1);
+        return pending.isEmpty() ? 0 : pending.get(0).getTotalDeliveryCount();
+    }
+
+    /**
+     * 把消息移入死信队列，并把下单结果记为失败
+     * 死信订单在 Redis 中保留库存和订单集合中的用户，对账任务不补偿，重放后重新走下单逻辑
+     */
+    public void deadLetter(MapRecord<String, Object, Object> record, long deliveries) {
+        Map<String, String> values = orderFields(record.getValue());
+        values.put("sourceId", record.getId().getValue());
+        values.put("deliveries", String.valueOf(deliveries));
+        String orderId = values.get("id");
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.xAdd(DLQ_KEY, values);
+            conn.xAck(STREAM_KEY, GROUP, record.getId());
+            conn.xDel(STREAM_KEY, record.getId());
+            if(orderId != null){
+                conn.hMSet(ORDER_STATUS_KEY + orderId, statusFields(values.get("userId"), OrderStatusStore.FAILED));
+                conn.expire(ORDER_STATUS_KEY + orderId, TimeUnit.MINUTES.toSeconds(ORDER_STATUS_TTL));
+            }
+            return null;
+        });
+        log.error("订单消息 {} 投递 {} 次仍处理失败，已移入死信队列：{}", record.getId(), deliveries, values);
+    }
+
+    /**
+     * 查看死信队列中最早的消息
+     */
+    public List<MapRecord<String, Object, Object>> deadLetters(int count) {
+        return stringRedisTemplate.opsForStream()
+                .range(DLQ_KEY, Range.unbounded(), RedisZSetCommands.Limit.limit().count(count));
+    }
+
+    /**
+     * 死信队列中的下单用户：券id -> 用户id，对账任务跳过这些用户，避免归还库存后重放又创建订单
+     */
+    public Map<Long, Set<String>> deadLetterUsers() {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(DLQ_KEY, Range.unbounded());
+        Map<Long, Set<String>> users = new HashMap<>();
+        if(records == null){
+            return users;
+        }
+        for (MapRecord<String, Object, Object> record : records) {
+            Object voucherId = record.getValue().get("voucherId");
+            Object userId = record.getValue().get("userId");
+            if(voucherId != null && userId != null){
+                users.computeIfAbsent(Long.valueOf(voucherId.toString()), k -> new HashSet<>()).add(userId.toString());
+            }
+        }
+        return users;
+    }
+
+    /**
+     * 重放死信消息：重新发送到 stream.orders 并从死信队列中删除
+     * @return 消息是否存在
+     */
+    public boolean replay(String deadLetterId) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(DLQ_KEY, Range.closed(deadLetterId, deadLetterId));
+        if(records == null || records.isEmpty()){
+            return false;
+        }
+        replay(records.get(0));
+        return true;
+    }
+
+    /**
+     * 重放死信队列中最早的 count 条消息
+     * @return 重放的消息数
+     */
+    public int replayAll(int count) {
+        List<MapRecord<String, Object, Object>> records = deadLetters(count);
+        if(records == null){
+            return 0;
+        }
+        for (MapRecord<String, Object, Object> record : records) {
+            replay(record);
+        }
+        return records.size();
+    }
+
+    // 先发送再删除，中途失败最多重复一次，重复的订单消息由一人一单校验过滤
+    private void replay(MapRecord<String, Object, Object> record) {
+        Map<String, String> values = orderFields(record.getValue());
+        String orderId = values.get("id");
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.xAdd(STREAM_KEY, values);
+            conn.xDel(DLQ_KEY, record.getId());
+            if(orderId != null){
+                conn.hMSet(ORDER_STATUS_KEY + orderId, statusFields(values.get("userId"), OrderStatusStore.QUEUED));
+                conn.expire(ORDER_STATUS_KEY + orderId, TimeUnit.MINUTES.toSeconds(ORDER_STATUS_TTL));
+            }
+            return null;
+        });
+    }
+
+    // 下单结果记录可能已经过期，同时写入下单用户，重新创建的记录也能校验用户
+    private static Map<String, String> statusFields(String userId, String state) {
+        Map<String, String> fields = new HashMap<>(2);
+        fields.put(OrderStatusStore.STATE_FIELD, state);
+        if(userId != null){
+            fields.put(OrderStatusStore.USER_FIELD, userId);
+        }
+        return fields;
+    }
+
+    private static Map<String, String> orderFields(Map<Object, Object> values) {
+        Map<String, String> fields = new HashMap<>(ORDER_FIELDS.length + 2);
+        for (String field : ORDER_FIELDS) {
+            Object value = values.get(field);
+            if(value != null){
+                fields.put(field, value.toString());
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * 积压指标
+     */
+    public Metrics metrics() {
+        Long length = stringRedisTemplate.opsForStream().size(STREAM_KEY);
+        Long deadLetters = stringRedisTemplate.opsForStream().size(DLQ_KEY);
+        long pending = 0;
+        long oldestPendingAge = 0;
+        try {
+            PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(STREAM_KEY, GROUP);
+            pending = summary.getTotalPendingMessages();
+            if(pending > 0){
+                oldestPendingAge = age(summary.minRecordId());
+            }
+        } catch (Exception e) {
+            // 队列或消费者组还不存在
+            log.debug("查询未确认消息失败：{}", e.getMessage());
+        }
+        // 已确认的消息会被删除，队列中最早的消息就是等待最久的订单
+        long oldestAge = 0;
+        List<MapRecord<String, Object, Object>> oldest = stringRedisTemplate.opsForStream()
+                .range(STREAM_KEY, Range.unbounded(), RedisZSetCommands.Limit.limit().count(1));
+        if(oldest != null && !oldest.isEmpty()){
+            oldestAge = age(oldest.get(0).getId());
+        }
+        long len = length == null ? 0 : length;
+        return new Metrics(len, pending, Math.max(0, len - pending), oldestAge, oldestPendingAge,
+                deadLetters == null ? 0 : deadLetters);
+    }
+
+    // 消息 id 的前半部分是写入时间（毫秒）
+    private static long age(RecordId recordId) {
+        return Math.max(0, System.currentTimeMillis() - recordId.getTimestamp());
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Metrics {
+        // 队列中的消息数，即积压量
+        private long length;
+        // 已投递未确认的消息数
+        private long pending;
+        // 还没有投递给消费者的消息数
+        private long undelivered;
+        // 最早的消息已经等待的时间（毫秒），即下单到落库的延迟
+        private long oldestAgeMillis;
+        private long oldestPendingAgeMillis;
+        private long deadLetters;
+    }
+}
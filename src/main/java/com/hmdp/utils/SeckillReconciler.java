@@ -0,0 +1,229 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisServerCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SUSPECT_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SUSPECT_TTL;
+
+/**
+ * 秒杀库存对账：以 MySQL 为准，检查 Redis 库存与订单集合
+ * 不变式：Redis 库存 + 订单集合人数 = 数据库库存 + 未取消订单数 = 初始库存
+ * 1. 先用聚合查询比较每个券的订单数，只有不一致的券才逐个用户比对
+ * 2. 在订单集合中、但数据库中没有订单的用户记为可疑用户，连同发现时间保存在 Redis 中
+ *    下一轮该用户仍没有订单，且队列中发现时间之前的消息都已处理完，则视为下单失败且未补偿，移出集合并归还库存
+ *    死信队列中的订单等待重放，不补偿
+ * 3. 补偿后不变式仍不成立的券只告警，不自动修正
+ */
+@Slf4j
+@Component
+public class SeckillReconciler {
+
+    // 订单状态：4 已取消
+    private static final int STATUS_CANCELLED = 4;
+    // 结束后仍继续对账的时间，等待队列中的订单落库
+    private static final long ENDED_GRACE_HOURS = 1;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillVoucherMapper seckillVoucherMapper;
+    private final VoucherOrderMapper voucherOrderMapper;
+    private final SeckillStockStore seckillStockStore;
+    private final RedissonClient redissonClient;
+    private final SeckillOrderStream seckillOrderStream;
+
+    public SeckillReconciler(StringRedisTemplate stringRedisTemplate, SeckillVoucherMapper seckillVoucherMapper,
+                             VoucherOrderMapper voucherOrderMapper, SeckillStockStore seckillStockStore,
+                             RedissonClient redissonClient, SeckillOrderStream seckillOrderStream) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillVoucherMapper = seckillVoucherMapper;
+        this.voucherOrderMapper = voucherOrderMapper;
+        this.seckillStockStore = seckillStockStore;
+        this.redissonClient = redissonClient;
+        this.seckillOrderStream = seckillOrderStream;
+    }
+
+    @Scheduled(fixedDelay = 5 * 60 * 1000, initialDelay = 5 * 60 * 1000)
+    public void reconcile() {
+        // 1. 多实例部署时只允许一个实例对账
+        RLock lock = redissonClient.getLock("lock:seckill:reconcile");
+        if(!lock.tryLock()){
+            return;
+        }
+        try {
+            // 2. 进行中和刚结束的秒杀券
+            List<SeckillVoucher> vouchers = seckillVoucherMapper.selectList(new QueryWrapper<SeckillVoucher>()
+                    .gt("end_time", LocalDateTime.now().minusHours(ENDED_GRACE_HOURS)));
+            if(vouchers.isEmpty()){
+                return;
+            }
+            List<Long> ids = vouchers.stream().map(SeckillVoucher::getVoucherId).collect(Collectors.toList());
+            // 3. 一条聚合查询统计每个券的未取消订单数
+            Map<Long, Long> dbOrders = new HashMap<>();
+            List<Map<String, Object>> rows = voucherOrderMapper.selectMaps(new QueryWrapper<VoucherOrder>()
+                    .select("voucher_id", "COUNT(DISTINCT user_id) AS orders")
+                    .in("voucher_id", ids)
+                    .ne("status", STATUS_CANCELLED)
+                    .groupBy("voucher_id"));
+            for (Map<String, Object> row : rows) {
+                dbOrders.put(((Number) row.get("voucher_id")).longValue(), ((Number) row.get("orders")).longValue());
+            }
+            // 4. 一个 pipeline 查询 Redis 库存和订单集合人数
+            List<Object> redis = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long id : ids) {
+                    conn.hGet(SECKILL_STOCK_KEY + id, SeckillStockStore.STOCK_FIELD);
+                    conn.sCard(SECKILL_ORDER_KEY + id);
+                }
+                return null;
+            });
+            // 5. 队列中最早的消息的写入时间，早于该时间的消息都已处理完
+            Long queueHead = queueHead();
+            // 5.1 之后再读取死信队列：移入死信队列时先写死信再删除原消息，订单总在其中一个队列中
+            Map<Long, Set<String>> deadLetters = seckillOrderStream.deadLetterUsers();
+            for (int i = 0; i < vouchers.size(); i++) {
+                SeckillVoucher voucher = vouchers.get(i);
+                Object stock = redis.get(2 * i);
+                if(stock == null){
+                    // Redis 中没有该券，由预热或新增秒杀券写入
+                    continue;
+                }
+                check(voucher, Long.parseLong(stock.toString()), ((Number) redis.get(2 * i + 1)).longValue(),
+                        dbOrders.getOrDefault(voucher.getVoucherId(), 0L), queueHead,
+                        deadLetters.getOrDefault(voucher.getVoucherId(), Collections.emptySet()));
+            }
+        } catch (Exception e) {
+            log.error("秒杀库存对账异常", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void check(SeckillVoucher voucher, long redisStock, long redisOrders, long dbOrders, Long queueHead,
+                       Set<String> deadLetters) {
+        Long voucherId = voucher.getVoucherId();
+        String suspectKey = SECKILL_SUSPECT_KEY + voucherId;
+        // 1. Redis 订单集合人数多于数据库订单数：队列中未落库的订单，或者下单失败未补偿的用户
+        if(redisOrders > dbOrders){
+            Set<String> missing = missingUsers(voucherId);
+            // 死信订单保留库存等待重放，不是可疑用户
+            missing.removeAll(deadLetters);
+            Map<String, Long> previous = suspects(suspectKey);
+            long now = redisTime();
+            Map<String, Long> next = new HashMap<>();
+            int compensated = 0;
+            for (String userId : missing) {
+                Long detectedAt = previous.get(userId);
+                // 1.1 上一轮已经可疑，且发现时间之前写入的消息都已处理完（处理完的消息会被删除），
+                // 该用户的订单消息一定已经处理过，仍没有落库说明下单失败，移出集合并归还库存
+                if(detectedAt != null && (queueHead == null || queueHead > detectedAt)){
+                    if(seckillStockStore.compensate(voucherId, Long.valueOf(userId), true)){
+                        compensated++;
+                    }
+                    continue;
+                }
+                // 1.2 否则继续观察，保留最早的发现时间
+                next.put(userId, detectedAt != null ? detectedAt : now);
+            }
+            saveSuspects(suspectKey, next);
+            if(compensated > 0){
+                log.warn("秒杀券 {} 有 {} 个用户下单失败未补偿，已归还 Redis 库存", voucherId, compensated);
+            }
+        }else{
+            stringRedisTemplate.delete(suspectKey);
+        }
+        if(redisOrders < dbOrders){
+            log.warn("秒杀券 {} 的 Redis 订单集合人数 {} 少于数据库订单数 {}", voucherId, redisOrders, dbOrders);
+        }
+        // 2. 补偿只在库存与订单集合之间转移，不改变两者之和，因此用补偿前的值检查不变式
+        long redisTotal = redisStock + redisOrders;
+        long dbTotal = voucher.getStock() + dbOrders;
+        if(redisTotal != dbTotal){
+            log.warn("秒杀券 {} 库存不一致：Redis 库存 {} + 订单 {} = {}，数据库库存 {} + 订单 {} = {}",
+                    voucherId, redisStock, redisOrders, redisTotal, voucher.getStock(), dbOrders, dbTotal);
+        }
+    }
+
+    // 在 Redis 订单集合中、但数据库中没有未取消订单的用户
+    private Set<String> missingUsers(Long voucherId) {
+        Set<String> members = stringRedisTemplate.opsForSet().members(SECKILL_ORDER_KEY + voucherId);
+        if(members == null || members.isEmpty()){
+            return new HashSet<>();
+        }
+        List<Object> userIds = voucherOrderMapper.selectObjs(new QueryWrapper<VoucherOrder>()
+                .select("user_id")
+                .eq("voucher_id", voucherId)
+                .ne("status", STATUS_CANCELLED));
+        Set<String> ordered = userIds.stream().map(String::valueOf).collect(Collectors.toSet());
+        Set<String> missing = new HashSet<>(members);
+        missing.removeAll(ordered);
+        return missing;
+    }
+
+    // 上一轮保存的可疑用户：用户id -> 发现时间（Redis 服务器时间，毫秒）
+    private Map<String, Long> suspects(String suspectKey) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet().rangeWithScores(suspectKey, 0, -1);
+        Map<String, Long> suspects = new HashMap<>();
+        if(tuples != null){
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                suspects.put(tuple.getValue(), tuple.getScore().longValue());
+            }
+        }
+        return suspects;
+    }
+
+    // 替换可疑用户，设置有效期，对账任务停止后自动清除
+    private void saveSuspects(String suspectKey, Map<String, Long> suspects) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.del(suspectKey);
+            for (Map.Entry<String, Long> entry : suspects.entrySet()) {
+                conn.zAdd(suspectKey, entry.getValue(), entry.getKey());
+            }
+            if(!suspects.isEmpty()){
+                conn.expire(suspectKey, TimeUnit.MINUTES.toSeconds(SECKILL_SUSPECT_TTL));
+            }
+            return null;
+        });
+    }
+
+    // 消息 id 使用 Redis 服务器时间，发现时间也取 Redis 时间，避免实例之间的时钟偏差
+    private long redisTime() {
+        Long time = stringRedisTemplate.execute((RedisCallback<Long>) RedisServerCommands::time);
+        return time == null ? System.currentTimeMillis() : time;
+    }
+
+    // 已确认的消息会被删除，队列中最早的消息（含未确认的）的写入时间，队列为空时返回 null
+    private Long queueHead() {
+        List<MapRecord<String, Object, Object>> oldest = stringRedisTemplate.opsForStream()
+                .range(SeckillOrderStream.STREAM_KEY, Range.unbounded(), RedisZSetCommands.Limit.limit().count(1));
+        return oldest == null || oldest.isEmpty() ? null : oldest.get(0).getId().getTimestamp();
+    }
+}
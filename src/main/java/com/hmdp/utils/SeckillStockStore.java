@@ -0,0 +1,145 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 秒杀券在 Redis 中的库存与售卖时间
+ * seckill:stock:{voucherId} 为 hash：stock 库存，begin 开始时间，end 结束时间（毫秒），由 seckill.lua 原子地校验并扣减
+ * seckill:order{voucherId} 为已下单用户的 set
+ */
+@Component
+public class SeckillStockStore {
+
+    public static final String STOCK_FIELD = "stock";
+
+    private static final DefaultRedisScript<Long> INIT_SCRIPT;
+    static{
+        INIT_SCRIPT = new DefaultRedisScript<>();
+        INIT_SCRIPT.setLocation(new ClassPathResource("seckill_stock_init.lua"));
+        INIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final DefaultRedisScript<Long> COMPENSATE_SCRIPT;
+    static{
+        COMPENSATE_SCRIPT = new DefaultRedisScript<>();
+        COMPENSATE_SCRIPT.setLocation(new ClassPathResource("seckill_compensate.lua"));
+        COMPENSATE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public SeckillStockStore(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    public static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 写入秒杀券的库存和售卖时间，已存在的库存不覆盖，旧的 string 格式会被转换为 hash
+     */
+    public void init(SeckillVoucher voucher) {
+        stringRedisTemplate.execute(INIT_SCRIPT,
+                Collections.singletonList(SECKILL_STOCK_KEY + voucher.getVoucherId()),
+                voucher.getStock().toString(),
+                String.valueOf(toMillis(voucher.getBeginTime())),
+                String.valueOf(toMillis(voucher.getEndTime())));
+    }
+
+    /**
+     * 一个 pipeline 内批量初始化
+     */
+    public void initAll(Collection<SeckillVoucher> vouchers) {
+        if(vouchers.isEmpty()){
+            return;
+        }
+        String script = INIT_SCRIPT.getScriptAsString();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (SeckillVoucher voucher : vouchers) {
+                conn.eval(script, ReturnType.INTEGER, 1,
+                        SECKILL_STOCK_KEY + voucher.getVoucherId(),
+                        voucher.getStock().toString(),
+                        String.valueOf(toMillis(voucher.getBeginTime())),
+                        String.valueOf(toMillis(voucher.getEndTime())));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 补偿一次 seckill.lua 的扣减：把用户移出订单集合，并按需归还库存
+     * 用户已不在订单集合中时什么都不做，因此重复补偿是安全的
+     * @param restoreStock 是否归还 Redis 库存，数据库库存不足导致的失败不应归还
+     * @return 是否执行了补偿
+     */
+    public boolean compensate(Long voucherId, Long userId, boolean restoreStock) {
+        Long result = stringRedisTemplate.execute(COMPENSATE_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId),
+                userId.toString(),
+                restoreStock ? "1" : "0");
+        return result != null && result == 1L;
+    }
+
+    /**
+     * 一个 pipeline 内批量补偿，用户移出订单集合并归还库存
+     */
+    public void compensateAll(Collection<VoucherOrder> orders) {
+        if(orders.isEmpty()){
+            return;
+        }
+        String script = COMPENSATE_SCRIPT.getScriptAsString();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (VoucherOrder order : orders) {
+                conn.eval(script, ReturnType.INTEGER, 2,
+                        SECKILL_STOCK_KEY + order.getVoucherId(),
+                        SECKILL_ORDER_KEY + order.getVoucherId(),
+                        order.getUserId().toString(),
+                        "1");
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 一个 pipeline 内查询多个秒杀券的实时库存，返回值与 voucherIds 一一对应，不存在时为 null
+     */
+    public List<Integer> queryStocks(List<Long> voucherIds) {
+        if(voucherIds.isEmpty()){
+            return Collections.emptyList();
+        }
+        List<Object> stocks = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long voucherId : voucherIds) {
+                conn.hGet(SECKILL_STOCK_KEY + voucherId, STOCK_FIELD);
+            }
+            return null;
+        });
+        List<Integer> result = new ArrayList<>(stocks.size());
+        for (Object stock : stocks) {
+            result.add(stock == null ? null : Integer.valueOf(stock.toString()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,144 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.HMac;
+import cn.hutool.crypto.digest.HmacAlgorithm;
+import com.hmdp.dto.SeckillQueueStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_QUEUE_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 秒杀排队室
+ * 1. 用户先排队（seckill_queue.lua），按到达顺序放行约 admit-factor 倍库存的用户，其余用户轮询自己的位置
+ * 2. 放行的用户拿到签名的抢购凭证：{过期时间}.{HMAC(voucherId:userId:过期时间)}，下单时无需访问 Redis 即可校验
+ * 这样进入 seckill.lua 的请求数与库存成正比，而不是与抢购人数成正比
+ */
+@Component
+public class SeckillWaitingRoom {
+
+    public static final int ADMITTED = 0;
+    public static final int WAITING = 1;
+    public static final int SOLD_OUT = 2;
+    public static final int CLOSED = 3;
+    public static final int NOT_QUEUED = 4;
+
+    // 脚本返回 "状态:前面还有多少人"
+    private static final DefaultRedisScript<String> QUEUE_SCRIPT;
+    static{
+        QUEUE_SCRIPT = new DefaultRedisScript<>();
+        QUEUE_SCRIPT.setLocation(new ClassPathResource("seckill_queue.lua"));
+        QUEUE_SCRIPT.setResultType(String.class);
+    }
+
+    @Value("${hmdp.seckill.admission.enabled:true}")
+    private boolean enabled = true;
+
+    // 放行人数相对剩余库存的倍数
+    @Value("${hmdp.seckill.admission.admit-factor:2}")
+    private int admitFactor = 2;
+
+    @Value("${hmdp.seckill.admission.token-ttl-minutes:10}")
+    private long tokenTtlMinutes = 10;
+
+    // 所有实例必须相同，没有默认值，启用排队时必须配置
+    @Value("${hmdp.seckill.admission.secret:}")
+    private String secret;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public SeckillWaitingRoom(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    private void init() {
+        // 密钥公开就可以自行签发凭证，排队形同虚设，启用排队但没有配置密钥时拒绝启动
+        if(enabled && StrUtil.isBlank(secret)){
+            throw new IllegalStateException("已启用秒杀排队，但没有配置签名密钥 hmdp.seckill.admission.secret");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 排队，已经排过队时返回当前状态
+     */
+    public SeckillQueueStatus join(Long voucherId, Long userId) {
+        return execute(voucherId, userId, true);
+    }
+
+    /**
+     * 查询排队状态，不会排队
+     */
+    public SeckillQueueStatus query(Long voucherId, Long userId) {
+        return execute(voucherId, userId, false);
+    }
+
+    private SeckillQueueStatus execute(Long voucherId, Long userId, boolean join) {
+        String result = stringRedisTemplate.execute(QUEUE_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId, SECKILL_QUEUE_KEY + voucherId),
+                userId.toString(),
+                join ? "1" : "0",
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(admitFactor));
+        int colon = result.indexOf(':');
+        int status = Integer.parseInt(result.substring(0, colon));
+        long ahead = Long.parseLong(result.substring(colon + 1));
+        String token = status == ADMITTED ? sign(voucherId, userId) : null;
+        return new SeckillQueueStatus(status, ahead, token);
+    }
+
+    /**
+     * 签发抢购凭证
+     */
+    public String sign(Long voucherId, Long userId) {
+        long expireAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(tokenTtlMinutes);
+        return expireAt + "." + hmac(voucherId, userId, expireAt);
+    }
+
+    /**
+     * 校验抢购凭证是否属于该用户和秒杀券，并且没有过期
+     */
+    public boolean verify(String token, Long voucherId, Long userId) {
+        if(token == null){
+            return false;
+        }
+        int dot = token.indexOf('.');
+        if(dot <= 0){
+            return false;
+        }
+        long expireAt;
+        try {
+            expireAt = Long.parseLong(token.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if(expireAt < System.currentTimeMillis()){
+            return false;
+        }
+        // 常量时间比较，避免通过响应时间逐字节猜出签名
+        byte[] expected = hmac(voucherId, userId, expireAt).getBytes(StandardCharsets.UTF_8);
+        byte[] actual = token.substring(dot + 1).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private String hmac(Long voucherId, Long userId, long expireAt) {
+        HMac hMac = new HMac(HmacAlgorithm.HmacSHA256, secret.getBytes(StandardCharsets.UTF_8));
+        return hMac.digestHex(voucherId + ":" + userId + ":" + expireAt);
+    }
+}
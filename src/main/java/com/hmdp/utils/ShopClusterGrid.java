@@ -0,0 +1,76 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.dto.ShopCluster;
+import com.hmdp.entity.Shop;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 地图视野内的网格聚合
+ * 格子边长为 360 / 2^k 度，与全局经纬度网格对齐，平移地图时同一区域的聚合结果保持稳定
+ */
+public class ShopClusterGrid {
+
+    private final double cellSize;
+
+    private final Map<Long, Cell> cells = new HashMap<>();
+
+    public ShopClusterGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * 根据缩放级别选择格子边长：每个 256px 瓦片划分 4 x 4 个格子，视野内格子数超过 maxCells 时逐级放大格子
+     */
+    public static double cellSize(double minX, double minY, double maxX, double maxY, int zoom, int maxCells) {
+        double cell = 360.0 / (1L << (zoom + 2));
+        while (cell < 360 && (Math.floor(maxX / cell) - Math.floor(minX / cell) + 1)
+                * (Math.floor(maxY / cell) - Math.floor(minY / cell) + 1) > maxCells) {
+            cell *= 2;
+        }
+        return cell;
+    }
+
+    public void add(Shop shop) {
+        long ix = (long) Math.floor(shop.getX() / cellSize);
+        long iy = (long) Math.floor(shop.getY() / cellSize);
+        Cell cell = cells.computeIfAbsent((ix << 32) | (iy & 0xFFFFFFFFL), k -> new Cell());
+        cell.count++;
+        cell.sumX += shop.getX();
+        cell.sumY += shop.getY();
+        if(cell.best == null || better(shop, cell.best)){
+            cell.best = shop;
+        }
+    }
+
+    private static boolean better(Shop a, Shop b) {
+        int scoreA = a.getScore() == null ? 0 : a.getScore();
+        int scoreB = b.getScore() == null ? 0 : b.getScore();
+        if(scoreA != scoreB){
+            return scoreA > scoreB;
+        }
+        int soldA = a.getSold() == null ? 0 : a.getSold();
+        int soldB = b.getSold() == null ? 0 : b.getSold();
+        return soldA > soldB;
+    }
+
+    public List<ShopCluster> clusters() {
+        List<ShopCluster> result = new ArrayList<>(cells.size());
+        for (Cell cell : cells.values()) {
+            result.add(new ShopCluster(cell.count, cell.sumX / cell.count, cell.sumY / cell.count,
+                    BeanUtil.copyProperties(cell.best, Shop.class)));
+        }
+        return result;
+    }
+
+    private static class Cell {
+        int count;
+        double sumX;
+        double sumY;
+        Shop best;
+    }
+}
@@ -0,0 +1,553 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 进程内的店铺空间索引，每个 typeId 一棵静态 KD 树
+ * 店铺坐标转换为单位球面上的三维坐标，弦长与球面距离单调对应，因此按弦长排序即按真实距离排序，
+ * 附近查询在 JVM 内完成，不再访问 Redis GEO 和 MySQL
+ * 每棵树构建后不可变，更新时整棵替换（copy-on-write），查询无需加锁
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex {
+
+    private final ShopMapper shopMapper;
+
+    private final Map<Long, TypeIndex> indexes = new ConcurrentHashMap<>();
+
+    // 店铺id -> 所在类型，用于更新、删除时定位索引
+    private final Map<Long, Long> shopTypes = new ConcurrentHashMap<>();
+
+    private volatile boolean ready = false;
+
+    // 是否启用进程内索引，关闭后附近查询走 Redis GEO + 附近结果缓存
+    @Value("${hmdp.shop.local-geo-index:true}")
+    private boolean enabled = true;
+
+    public ShopGeoIndex(ShopMapper shopMapper) {
+        this.shopMapper = shopMapper;
+    }
+
+    @PostConstruct
+    private void init() {
+        if(!enabled){
+            return;
+        }
+        try {
+            long begin = System.currentTimeMillis();
+            List<Shop> shops = shopMapper.selectList(null);
+            reload(shops);
+            log.info("店铺空间索引加载完成，共 {} 个店铺，耗时 {} ms", shops.size(), System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            // 加载失败时附近查询退回到 Redis GEO
+            log.error("店铺空间索引加载失败", e);
+        }
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 用全量店铺重建所有类型的索引
+     */
+    public synchronized void reload(List<Shop> shops) {
+        Map<Long, List<Shop>> byType = shops.stream()
+                .filter(shop -> shop.getTypeId() != null && shop.getX() != null && shop.getY() != null)
+                .collect(Collectors.groupingBy(Shop::getTypeId));
+        shopTypes.clear();
+        for (Map.Entry<Long, List<Shop>> entry : byType.entrySet()) {
+            indexes.put(entry.getKey(), new TypeIndex(entry.getValue()));
+            for (Shop shop : entry.getValue()) {
+                shopTypes.put(shop.getId(), entry.getKey());
+            }
+        }
+        indexes.keySet().retainAll(byType.keySet());
+        ready = true;
+    }
+
+    /**
+     * 新增或更新一个店铺，类型变化时会从旧类型中移除
+     */
+    public synchronized void upsert(Shop shop) {
+        if(shop == null || shop.getId() == null){
+            return;
+        }
+        remove(shop.getId());
+        if(shop.getTypeId() == null || shop.getX() == null || shop.getY() == null){
+            return;
+        }
+        TypeIndex old = indexes.get(shop.getTypeId());
+        List<Shop> shops = old == null ? new ArrayList<>() : old.shopList();
+        shops.add(shop);
+        indexes.put(shop.getTypeId(), new TypeIndex(shops));
+        shopTypes.put(shop.getId(), shop.getTypeId());
+    }
+
+    public synchronized void remove(Long shopId) {
+        Long typeId = shopTypes.remove(shopId);
+        TypeIndex index = typeId == null ? null : indexes.get(typeId);
+        if(index == null){
+            return;
+        }
+        List<Shop> shops = index.shopList();
+        shops.removeIf(shop -> shop.getId().equals(shopId));
+        if(shops.isEmpty()){
+            indexes.remove(typeId);
+        }else{
+            indexes.put(typeId, new TypeIndex(shops));
+        }
+    }
+
+    /**
+     * 按距离由近到远查询 [from, end) 区间内的店铺
+     * @param radius 查询半径，单位：米
+     * @return 店铺副本，distance 字段为距离（米）
+     */
+    public List<Shop> nearest(Long typeId, double x, double y, double radius, int from, int end) {
+        TypeIndex index = indexes.get(typeId);
+        if(index == null || from < 0 || end <= from){
+            return Collections.emptyList();
+        }
+        // top-k 堆的容量不超过该类型的店铺数
+        int k = Math.min(end, index.shops.length);
+        if(from >= k){
+            return Collections.emptyList();
+        }
+        return index.copyRange(index.nearest(x, y, radius, k), from);
+    }
+
+    /**
+     * 查询半径内、均价在 [minPrice, maxPrice] 之间的店铺，按 sort 排序后取 [from, end) 区间，排序值相同时近的在前
+     * @param radius 查询半径，单位：米
+     * @return 店铺副本，distance 字段为距离（米）
+     */
+    public List<Shop> search(Long typeId, double x, double y, double radius, Sort sort,
+                             long minPrice, long maxPrice, int from, int end) {
+        TypeIndex index = indexes.get(typeId);
+        if(index == null || from < 0 || end <= from){
+            return Collections.emptyList();
+        }
+        // top-k 堆的容量不超过该类型的店铺数
+        int k = Math.min(end, index.shops.length);
+        if(from >= k){
+            return Collections.emptyList();
+        }
+        if(sort == Sort.DISTANCE && minPrice == Long.MIN_VALUE && maxPrice == Long.MAX_VALUE){
+            return index.copyRange(index.nearest(x, y, radius, k), from);
+        }
+        return index.copyRange(index.search(x, y, radius, sort, minPrice, maxPrice, k), from);
+    }
+
+    /**
+     * 把矩形范围内的店铺加入网格聚合
+     * @param typeId 店铺类型，为 null 时查询所有类型
+     */
+    public void viewport(Long typeId, double minX, double minY, double maxX, double maxY, ShopClusterGrid grid) {
+        if(typeId != null){
+            TypeIndex index = indexes.get(typeId);
+            if(index != null){
+                index.viewport(minX, minY, maxX, maxY, grid);
+            }
+            return;
+        }
+        for (TypeIndex index : indexes.values()) {
+            index.viewport(minX, minY, maxX, maxY, grid);
+        }
+    }
+
+    /**
+     * 附近搜索的排序方式
+     */
+    public enum Sort {
+        DISTANCE, SCORE, SOLD, PRICE;
+
+        public static Sort of(String name) {
+            for (Sort sort : values()) {
+                if(sort.name().equalsIgnoreCase(name)){
+                    return sort;
+                }
+            }
+            return null;
+        }
+    }
+
+    // 弦长 -> 球面距离（米）
+    static double chordToMeters(double chord) {
+        return 2 * GeoUtils.EARTH_RADIUS * Math.asin(Math.min(1.0, chord / 2));
+    }
+
+    // 球面距离（米） -> 弦长
+    static double metersToChord(double meters) {
+        return 2 * Math.sin(Math.min(meters / GeoUtils.EARTH_RADIUS, Math.PI) / 2);
+    }
+
+    /**
+     * top-k 查询结果，用最大堆维护，堆顶为当前最差的结果
+     * 比较顺序：rank 小的优先，rank 相同时弦长平方 dist2 小的优先
+     */
+    static final class Neighbors {
+        final int[] idx;
+        final double[] rank;
+        final double[] dist2;
+        int size;
+
+        Neighbors(int capacity) {
+            this.idx = new int[capacity];
+            this.rank = new double[capacity];
+            this.dist2 = new double[capacity];
+        }
+
+        boolean isFull() {
+            return size == idx.length;
+        }
+
+        // a 是否比 b 差
+        private boolean worse(int a, int b) {
+            return rank[a] > rank[b] || (rank[a] == rank[b] && dist2[a] > dist2[b]);
+        }
+
+        void offer(int i, double r, double d2) {
+            if(size < idx.length){
+                // 上浮
+                int c = size++;
+                idx[c] = i;
+                rank[c] = r;
+                dist2[c] = d2;
+                while (c > 0) {
+                    int p = (c - 1) >>> 1;
+                    if(!worse(c, p)){
+                        break;
+                    }
+                    swap(p, c);
+                    c = p;
+                }
+            }else if(r < rank[0] || (r == rank[0] && d2 < dist2[0])){
+                idx[0] = i;
+                rank[0] = r;
+                dist2[0] = d2;
+                siftDown(0, size);
+            }
+        }
+
+        private void siftDown(int p, int n) {
+            while (true) {
+                int l = 2 * p + 1, r = l + 1, largest = p;
+                if(l < n && worse(l, largest)) largest = l;
+                if(r < n && worse(r, largest)) largest = r;
+                if(largest == p){
+                    return;
+                }
+                swap(p, largest);
+                p = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int i = idx[a]; idx[a] = idx[b]; idx[b] = i;
+            double d = rank[a]; rank[a] = rank[b]; rank[b] = d;
+            d = dist2[a]; dist2[a] = dist2[b]; dist2[b] = d;
+        }
+
+        // 堆排序为升序
+        void sort() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+        }
+    }
+
+    /**
+     * 一个类型的 KD 树：节点按隐式二叉树排列在数组中，[lo, hi) 区间的中点为根，左右子区间为子树
+     * 除坐标外还保存评分、销量、均价，以及每棵子树的最高评分、最高销量、均价范围，用于 top-k 搜索时剪枝
+     */
+    static final class TypeIndex {
+        final Shop[] shops;
+        final double[] cx;
+        final double[] cy;
+        final double[] cz;
+        final int[] score;
+        final int[] sold;
+        // 均价为空时视为 Long.MAX_VALUE，按均价排序时排在最后
+        final long[] price;
+        // 以 mid 为根的子树的聚合值
+        final int[] maxScore;
+        final int[] maxSold;
+        final long[] minPrice;
+        final long[] maxPrice;
+        // 按经度排序的下标和经度，用于矩形范围查询
+        final int[] byLon;
+        final double[] sortedLon;
+
+        TypeIndex(List<Shop> list) {
+            int n = list.size();
+            shops = list.toArray(new Shop[0]);
+            cx = new double[n];
+            cy = new double[n];
+            cz = new double[n];
+            score = new int[n];
+            sold = new int[n];
+            price = new long[n];
+            for (int i = 0; i < n; i++) {
+                Shop shop = shops[i];
+                double lon = Math.toRadians(shop.getX());
+                double lat = Math.toRadians(shop.getY());
+                cx[i] = Math.cos(lat) * Math.cos(lon);
+                cy[i] = Math.cos(lat) * Math.sin(lon);
+                cz[i] = Math.sin(lat);
+                score[i] = shop.getScore() == null ? 0 : shop.getScore();
+                sold[i] = shop.getSold() == null ? 0 : shop.getSold();
+                price[i] = shop.getAvgPrice() == null ? Long.MAX_VALUE : shop.getAvgPrice();
+            }
+            build(0, n, 0);
+            maxScore = new int[n];
+            maxSold = new int[n];
+            minPrice = new long[n];
+            maxPrice = new long[n];
+            aggregate(0, n);
+            byLon = IntStream.range(0, n).boxed()
+                    .sorted(Comparator.comparingDouble(i -> shops[i].getX()))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            sortedLon = new double[n];
+            for (int i = 0; i < n; i++) {
+                sortedLon[i] = shops[byLon[i]].getX();
+            }
+        }
+
+        List<Shop> shopList() {
+            List<Shop> list = new ArrayList<>(shops.length + 1);
+            Collections.addAll(list, shops);
+            return list;
+        }
+
+        // 把排好序的结果中 [from, size) 的部分转换为带距离的店铺副本
+        List<Shop> copyRange(Neighbors neighbors, int from) {
+            List<Shop> result = new ArrayList<>(Math.max(neighbors.size - from, 0));
+            for (int i = from; i < neighbors.size; i++) {
+                Shop shop = BeanUtil.copyProperties(shops[neighbors.idx[i]], Shop.class);
+                shop.setDistance(chordToMeters(Math.sqrt(neighbors.dist2[i])));
+                result.add(shop);
+            }
+            return result;
+        }
+
+        // 二分查找经度不小于 minX 的第一个店铺，顺序扫描到 maxX，再按纬度过滤
+        void viewport(double minX, double minY, double maxX, double maxY, ShopClusterGrid grid) {
+            int lo = 0, hi = sortedLon.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(sortedLon[mid] < minX){
+                    lo = mid + 1;
+                }else{
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < sortedLon.length && sortedLon[i] <= maxX; i++) {
+                Shop shop = shops[byLon[i]];
+                if(shop.getY() >= minY && shop.getY() <= maxY){
+                    grid.add(shop);
+                }
+            }
+        }
+
+        private double coord(int i, int axis) {
+            return axis == 0 ? cx[i] : axis == 1 ? cy[i] : cz[i];
+        }
+
+        private void build(int lo, int hi, int axis) {
+            if(hi - lo <= 1){
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, axis);
+            int next = (axis + 1) % 3;
+            build(lo, mid, next);
+            build(mid + 1, hi, next);
+        }
+
+        // 后序计算每棵子树的聚合值，返回子树根的下标，空子树返回 -1
+        private int aggregate(int lo, int hi) {
+            if(lo >= hi){
+                return -1;
+            }
+            int mid = (lo + hi) >>> 1;
+            maxScore[mid] = score[mid];
+            maxSold[mid] = sold[mid];
+            minPrice[mid] = price[mid];
+            maxPrice[mid] = price[mid];
+            for (int child : new int[]{aggregate(lo, mid), aggregate(mid + 1, hi)}) {
+                if(child >= 0){
+                    maxScore[mid] = Math.max(maxScore[mid], maxScore[child]);
+                    maxSold[mid] = Math.max(maxSold[mid], maxSold[child]);
+                    minPrice[mid] = Math.min(minPrice[mid], minPrice[child]);
+                    maxPrice[mid] = Math.max(maxPrice[mid], maxPrice[child]);
+                }
+            }
+            return mid;
+        }
+
+        // 快速选择：使 [lo, hi] 中第 k 个位置为该维度的中位数，左侧不大于它，右侧不小于它
+        private void select(int lo, int hi, int k, int axis) {
+            while (hi > lo) {
+                double pivot = coord((lo + hi) >>> 1, axis);
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (coord(i, axis) < pivot) i++;
+                    while (coord(j, axis) > pivot) j--;
+                    if(i <= j){
+                        swap(i++, j--);
+                    }
+                }
+                if(k <= j){
+                    hi = j;
+                }else if(k >= i){
+                    lo = i;
+                }else{
+                    return;
+                }
+            }
+        }
+
+        private void swap(int i, int j) {
+            Shop s = shops[i]; shops[i] = shops[j]; shops[j] = s;
+            double t = cx[i]; cx[i] = cx[j]; cx[j] = t;
+            t = cy[i]; cy[i] = cy[j]; cy[j] = t;
+            t = cz[i]; cz[i] = cz[j]; cz[j] = t;
+            int v = score[i]; score[i] = score[j]; score[j] = v;
+            v = sold[i]; sold[i] = sold[j]; sold[j] = v;
+            long p = price[i]; price[i] = price[j]; price[j] = p;
+        }
+
+        private static double[] toUnitVector(double x, double y) {
+            double lon = Math.toRadians(x);
+            double lat = Math.toRadians(y);
+            return new double[]{Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat)};
+        }
+
+        /**
+         * 查询距离 (x, y) 最近、且在 radius 米以内的 k 个店铺
+         */
+        Neighbors nearest(double x, double y, double radius, int k) {
+            double[] q = toUnitVector(x, y);
+            double maxChord = metersToChord(radius);
+            // 排序值即弦长平方
+            Neighbors heap = new Neighbors(k);
+            searchNearest(0, shops.length, 0, q, maxChord * maxChord, heap);
+            heap.sort();
+            return heap;
+        }
+
+        private void searchNearest(int lo, int hi, int axis, double[] q, double maxDist2, Neighbors heap) {
+            if(lo >= hi){
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            double d2 = dist2(mid, q);
+            if(d2 <= maxDist2){
+                heap.offer(mid, d2, d2);
+            }
+            double diff = q[axis] - coord(mid, axis);
+            int next = (axis + 1) % 3;
+            // 先搜索查询点所在一侧
+            if(diff < 0){
+                searchNearest(lo, mid, next, q, maxDist2, heap);
+            }else{
+                searchNearest(mid + 1, hi, next, q, maxDist2, heap);
+            }
+            // 另一侧只有可能存在更近的点时才搜索
+            double bound = heap.isFull() ? Math.min(heap.rank[0], maxDist2) : maxDist2;
+            if(diff * diff <= bound){
+                if(diff < 0){
+                    searchNearest(mid + 1, hi, next, q, maxDist2, heap);
+                }else{
+                    searchNearest(lo, mid, next, q, maxDist2, heap);
+                }
+            }
+        }
+
+        /**
+         * 查询 radius 米以内、均价在 [minPrice, maxPrice] 之间、按 sort 排在前 k 的店铺
+         */
+        Neighbors search(double x, double y, double radius, Sort sort, long minPrice, long maxPrice, int k) {
+            double[] q = toUnitVector(x, y);
+            double maxChord = metersToChord(radius);
+            Neighbors heap = new Neighbors(k);
+            searchRanked(0, shops.length, 0, q, maxChord * maxChord, sort, minPrice, maxPrice, heap);
+            heap.sort();
+            return heap;
+        }
+
+        private void searchRanked(int lo, int hi, int axis, double[] q, double maxDist2,
+                                  Sort sort, long low, long high, Neighbors heap) {
+            if(lo >= hi){
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            // 1. 子树内没有均价符合条件的店铺，或者子树内最好的排序值也比不上当前第 k 个，整棵子树跳过
+            if(maxPrice[mid] < low || minPrice[mid] > high){
+                return;
+            }
+            if(heap.isFull() && subtreeBestRank(mid, sort) > heap.rank[0]){
+                return;
+            }
+            // 2. 当前节点
+            double d2 = dist2(mid, q);
+            if(d2 <= maxDist2 && price[mid] >= low && price[mid] <= high){
+                heap.offer(mid, rank(mid, sort, d2), d2);
+            }
+            // 3. 左右子树，分割面与查询点的距离超过半径的一侧跳过
+            double diff = q[axis] - coord(mid, axis);
+            int next = (axis + 1) % 3;
+            boolean near = diff * diff <= maxDist2;
+            if(diff < 0 || near){
+                searchRanked(lo, mid, next, q, maxDist2, sort, low, high, heap);
+            }
+            if(diff >= 0 || near){
+                searchRanked(mid + 1, hi, next, q, maxDist2, sort, low, high, heap);
+            }
+        }
+
+        private double dist2(int i, double[] q) {
+            double dx = cx[i] - q[0], dy = cy[i] - q[1], dz = cz[i] - q[2];
+            return dx * dx + dy * dy + dz * dz;
+        }
+
+        // 排序值，越小越靠前
+        private double rank(int i, Sort sort, double d2) {
+            switch (sort) {
+                case SCORE: return -score[i];
+                case SOLD: return -sold[i];
+                case PRICE: return price[i];
+                default: return d2;
+            }
+        }
+
+        // 子树内排序值的下界
+        private double subtreeBestRank(int mid, Sort sort) {
+            switch (sort) {
+                case SCORE: return -maxScore[mid];
+                case SOLD: return -maxSold[mid];
+                case PRICE: return minPrice[mid];
+                default: return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGED_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 维护店铺的 GEO 数据：Redis 中的 shop:geo:{typeId} 以及进程内的 ShopGeoIndex
+ * 1. 启动时由 CacheWarmer 调用，分批 pipeline 全量加载
+ * 2. 店铺新增、修改（含类型变化）、删除时增量同步
+ * 3. 定时与 tb_shop 对账，修正遗漏的增量
+ * 进程内的 ShopGeoIndex 和 ShopSearchIndex 每个实例各有一份，变化通过 Redis 发布订阅通知所有实例
+ */
+@Slf4j
+@Component
+public class ShopGeoSync {
+
+    // 每个 pipeline 写入的店铺数
+    private static final int BATCH_SIZE = 500;
+    // 坐标偏差超过该值（米）视为位置不一致，GEO 编码本身的精度约为 0.6 米
+    private static final double POSITION_TOLERANCE = 1.0;
+    // 通知消息为店铺 id，该值表示所有实例全量重建进程内索引
+    private static final String RELOAD_ALL = "*";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ShopMapper shopMapper;
+    private final ShopGeoIndex shopGeoIndex;
+    private final ShopSearchIndex shopSearchIndex;
+    private final RedissonClient redissonClient;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    public ShopGeoSync(StringRedisTemplate stringRedisTemplate, ShopMapper shopMapper,
+                       ShopGeoIndex shopGeoIndex, ShopSearchIndex shopSearchIndex,
+                       RedissonClient redissonClient, RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shopMapper = shopMapper;
+        this.shopGeoIndex = shopGeoIndex;
+        this.shopSearchIndex = shopSearchIndex;
+        this.redissonClient = redissonClient;
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+    }
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> onShopChangedMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(SHOP_CHANGED_CHANNEL));
+    }
+
+    /**
+     * 全量加载所有类型的店铺坐标到 Redis
+     * @return 加载的店铺数
+     */
+    public int loadAll() {
+        long begin = System.currentTimeMillis();
+        List<Shop> shops = shopMapper.selectList(null);
+        for (int i = 0; i < shops.size(); i += BATCH_SIZE) {
+            geoAdd(shops.subList(i, Math.min(i + BATCH_SIZE, shops.size())));
+        }
+        log.info("店铺 GEO 数据加载完成，共 {} 个店铺，耗时 {} ms", shops.size(), System.currentTimeMillis() - begin);
+        return shops.size();
+    }
+
+    // 一个 pipeline 内写入一批店铺，GEOADD key 经度 纬度 member
+    private void geoAdd(List<Shop> shops) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Shop shop : shops) {
+                if(hasPosition(shop)){
+                    conn.geoAdd(SHOP_GEO_KEY + shop.getTypeId(), new Point(shop.getX(), shop.getY()),
+                            shop.getId().toString());
+                }
+            }
+            return null;
+        });
+    }
+
+    private static boolean hasPosition(Shop shop) {
+        return shop.getTypeId() != null && shop.getX() != null && shop.getY() != null;
+    }
+
+    /**
+     * 店铺写入后同步 GEO 数据；在事务中调用时等事务提交后再执行，事务回滚时 Redis 和进程内索引都不变
+     * @param old 修改前的店铺，新增时为 null
+     * @param current 修改后的店铺，删除时为 null
+     */
+    public void onShopChanged(Shop old, Shop current) {
+        afterCommit(() -> applyShopChange(old, current));
+    }
+
+    private void applyShopChange(Shop old, Shop current) {
+        // 1. 类型变化或删除时，从旧类型中移除
+        if(old != null && (current == null || !Objects.equals(old.getTypeId(), current.getTypeId()))){
+            stringRedisTemplate.opsForZSet().remove(SHOP_GEO_KEY + old.getTypeId(), old.getId().toString());
+        }
+        // 2. 新增或修改，写入新坐标
+        if(current != null && hasPosition(current)){
+            stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + current.getTypeId(),
+                    new Point(current.getX(), current.getY()), current.getId().toString());
+        }
+        // 3. 先同步本实例的 GEO 索引，保证写入后立即可查
+        if(current != null){
+            shopGeoIndex.upsert(current);
+        }else if(old != null){
+            shopGeoIndex.remove(old.getId());
+        }
+        // 4. 通知所有实例（包括自己）更新进程内索引，其他实例从数据库读取的已经是提交后的数据
+        Long shopId = current != null ? current.getId() : old != null ? old.getId() : null;
+        if(shopId != null){
+            stringRedisTemplate.convertAndSend(SHOP_CHANGED_CHANNEL, shopId.toString());
+        }
+    }
+
+    // 有事务时注册到事务提交之后执行，否则立即执行
+    private static void afterCommit(Runnable task) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+            return;
+        }
+        task.run();
+    }
+
+    /**
+     * 收到店铺变化通知：以 tb_shop 为准更新本实例的 GEO 索引，并合并重建搜索索引
+     */
+    private void onShopChangedMessage(String body) {
+        try {
+            if(RELOAD_ALL.equals(body)){
+                shopGeoIndex.reload(shopMapper.selectList(null));
+                shopSearchIndex.refresh();
+                return;
+            }
+            // 只更新变化的店铺，不重新加载全部店铺
+            Long shopId = Long.valueOf(body);
+            Shop shop = shopMapper.selectById(shopId);
+            if(shop != null){
+                shopGeoIndex.upsert(shop);
+                shopSearchIndex.upsert(shop);
+            }else{
+                shopGeoIndex.remove(shopId);
+                shopSearchIndex.remove(shopId);
+            }
+        } catch (Exception e) {
+            log.error("处理店铺变化通知失败, message: {}", body, e);
+        }
+    }
+
+    /**
+     * 定时对账：以 tb_shop 为准，修正 Redis 中缺失、多余和坐标不一致的店铺，并通知所有实例重建进程内索引
+     */
+    @Scheduled(fixedDelay = 10 * 60 * 1000, initialDelay = 10 * 60 * 1000)
+    public void reconcile() {
+        // 1. 多实例部署时只允许一个实例对账
+        RLock lock = redissonClient.getLock("lock:shop:geo:reconcile");
+        if(!lock.tryLock()){
+            return;
+        }
+        try {
+            List<Shop> shops = shopMapper.selectList(null);
+            Map<Long, List<Shop>> byType = shops.stream()
+                    .filter(ShopGeoSync::hasPosition)
+                    .collect(Collectors.groupingBy(Shop::getTypeId));
+            int missing = 0, moved = 0, extra = 0;
+            // 2. 逐个类型比对
+            for (Map.Entry<Long, List<Shop>> entry : byType.entrySet()) {
+                String key = SHOP_GEO_KEY + entry.getKey();
+                Map<String, Shop> expected = new HashMap<>(entry.getValue().size());
+                for (Shop shop : entry.getValue()) {
+                    expected.put(shop.getId().toString(), shop);
+                }
+                Set<String> members = stringRedisTemplate.opsForZSet().range(key, 0, -1);
+                Set<String> actual = members == null ? new HashSet<>() : members;
+                // 2.1 Redis 中多余的店铺
+                List<String> toRemove = actual.stream()
+                        .filter(member -> !expected.containsKey(member))
+                        .collect(Collectors.toList());
+                // 2.2 Redis 中缺失或坐标不一致的店铺，一次 GEOPOS 查询该类型所有店铺的坐标
+                List<String> ids = new ArrayList<>(expected.keySet());
+                List<Point> positions = stringRedisTemplate.opsForGeo().position(key, ids.toArray(new String[0]));
+                List<Shop> toAdd = new ArrayList<>();
+                for (int i = 0; i < ids.size(); i++) {
+                    Shop shop = expected.get(ids.get(i));
+                    Point point = positions == null ? null : positions.get(i);
+                    if(point == null){
+                        missing++;
+                        toAdd.add(shop);
+                    }else if(GeoUtils.distance(point.getX(), point.getY(), shop.getX(), shop.getY()) > POSITION_TOLERANCE){
+                        moved++;
+                        toAdd.add(shop);
+                    }
+                }
+                if(!toRemove.isEmpty()){
+                    extra += toRemove.size();
+                    stringRedisTemplate.opsForZSet().remove(key, toRemove.toArray());
+                }
+                for (int i = 0; i < toAdd.size(); i += BATCH_SIZE) {
+                    geoAdd(toAdd.subList(i, Math.min(i + BATCH_SIZE, toAdd.size())));
+                }
+            }
+            // 3. 已经没有店铺的类型，删除整个 key
+            for (String key : scanGeoKeys()) {
+                String typeId = key.substring(SHOP_GEO_KEY.length());
+                if(!typeId.matches("\\d+") || !byType.containsKey(Long.valueOf(typeId))){
+                    stringRedisTemplate.delete(key);
+                    extra++;
+                }
+            }
+            if(missing + moved + extra > 0){
+                log.warn("店铺 GEO 对账发现不一致并已修正：缺失 {}，坐标不一致 {}，多余 {}", missing, moved, extra);
+            }
+        } catch (Exception e) {
+            log.error("店铺 GEO 对账异常", e);
+        } finally {
+            lock.unlock();
+        }
+        // 4. 锁外通知所有实例重建进程内索引，修正各实例漏收的增量通知
+        stringRedisTemplate.convertAndSend(SHOP_CHANGED_CHANNEL, RELOAD_ALL);
+    }
+
+    private List<String> scanGeoKeys() {
+        List<String> keys = stringRedisTemplate.execute((RedisCallback<List<String>>) connection -> {
+            List<String> result = new ArrayList<>();
+            ScanOptions options = ScanOptions.scanOptions().match(SHOP_GEO_KEY + "*").count(1000).build();
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (cursor.hasNext()) {
+                    result.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return result;
+        });
+        return keys == null ? new ArrayList<>() : keys;
+    }
+}
@@ -0,0 +1,410 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopSuggestion;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 进程内的店铺全文检索索引，代替 name LIKE '%关键字%' 的全表扫描
+ * 1. 对店铺名称、商圈、地址做 n-gram 切分（单字 + 相邻两字），中文无需分词
+ * 2. 每个 gram 的倒排表为升序的 int 数组，查询时对所有 gram 的倒排表求交集
+ * 3. 命中的店铺按字段权重、前缀匹配、销量排序后分页
+ * 同一份快照中还包含名称前缀补全索引 ShopSuggestIndex
+ * 索引构建后不可变，店铺写入后只把变化的店铺合并进新快照，不重新查询 tb_shop，查询无需加锁
+ */
+@Slf4j
+@Component
+public class ShopSearchIndex {
+
+    // 字段权重：名称 > 商圈 > 地址
+    private static final int NAME_WEIGHT = 100;
+    private static final int AREA_WEIGHT = 20;
+    private static final int ADDRESS_WEIGHT = 10;
+    // 店铺写入后延迟重建，合并短时间内的多次写入
+    private static final long REBUILD_DELAY_MILLIS = 1000;
+
+    private final ShopMapper shopMapper;
+
+    private volatile Snapshot snapshot;
+
+    private final AtomicBoolean rebuildPending = new AtomicBoolean(false);
+
+    private final AtomicBoolean fullRebuildPending = new AtomicBoolean(false);
+
+    // 尚未合并的店铺变化：店铺 id -> 最新的店铺，店铺被删除时为空
+    private final Map<Long, Optional<Shop>> pendingChanges = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService rebuildExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "shop-search-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ShopSearchIndex(ShopMapper shopMapper) {
+        this.shopMapper = shopMapper;
+    }
+
+    @PostConstruct
+    private void init() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            // 加载失败时名称查询退回到数据库 LIKE 查询
+            log.error("店铺搜索索引加载失败", e);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * 需要以 tb_shop 为准全量重建时调用，延迟一段时间后重建索引
+     */
+    public void refresh() {
+        fullRebuildPending.set(true);
+        scheduleRebuild();
+    }
+
+    /**
+     * 店铺新增或修改后调用，延迟一段时间后把变化合并进索引
+     */
+    public void upsert(Shop shop) {
+        pendingChanges.put(shop.getId(), Optional.of(shop));
+        scheduleRebuild();
+    }
+
+    /**
+     * 店铺删除后调用，延迟一段时间后从索引中去掉
+     */
+    public void remove(Long shopId) {
+        pendingChanges.put(shopId, Optional.empty());
+        scheduleRebuild();
+    }
+
+    // 期间的多次调用只触发一次重建
+    private void scheduleRebuild() {
+        if(!rebuildPending.compareAndSet(false, true)){
+            return;
+        }
+        rebuildExecutor.schedule(() -> {
+            rebuildPending.set(false);
+            try {
+                if(fullRebuildPending.getAndSet(false)){
+                    // 全量重建会读到所有已提交的变化，积压的变化不必再合并
+                    pendingChanges.clear();
+                    rebuild();
+                }else{
+                    applyChanges();
+                }
+            } catch (Exception e) {
+                log.error("店铺搜索索引重建失败", e);
+            }
+        }, REBUILD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 把积压的店铺变化合并进当前快照，生成新的快照
+     */
+    public void applyChanges() {
+        // 1. 取出积压的变化，之后到达的变化留到下一次合并
+        Map<Long, Optional<Shop>> changes = new HashMap<>();
+        for (Long shopId : new ArrayList<>(pendingChanges.keySet())) {
+            Optional<Shop> change = pendingChanges.remove(shopId);
+            if(change != null){
+                changes.put(shopId, change);
+            }
+        }
+        Snapshot current = snapshot;
+        if(current == null){
+            // 启动时加载失败，没有可以合并的快照
+            rebuild();
+            return;
+        }
+        if(changes.isEmpty()){
+            return;
+        }
+        // 2. 替换或去掉变化的店铺，新店铺追加在末尾
+        List<Shop> shops = new ArrayList<>(current.shops.length + changes.size());
+        for (Shop shop : current.shops) {
+            Optional<Shop> change = changes.remove(shop.getId());
+            if(change == null){
+                shops.add(shop);
+            }else{
+                change.ifPresent(shops::add);
+            }
+        }
+        for (Optional<Shop> change : changes.values()) {
+            change.ifPresent(shops::add);
+        }
+        // 3. 用内存中的店铺构建新快照
+        load(shops);
+    }
+
+    /**
+     * 从 tb_shop 全量重建索引
+     */
+    public void rebuild() {
+        long begin = System.currentTimeMillis();
+        List<Shop> shops = shopMapper.selectList(null);
+        load(shops);
+        log.info("店铺搜索索引构建完成，共 {} 个店铺，耗时 {} ms", shops.size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 用给定的店铺构建索引并替换当前索引
+     */
+    public void load(List<Shop> shops) {
+        snapshot = new Snapshot(shops);
+    }
+
+    /**
+     * 检索名称、商圈或地址包含关键字的店铺，按相关度排序后返回 [from, end) 区间
+     */
+    public List<Shop> search(String keyword, int from, int end) {
+        Snapshot current = snapshot;
+        String query = normalize(keyword);
+        if(current == null || query.isEmpty() || from < 0 || end <= from){
+            return Collections.emptyList();
+        }
+        // 1. 求所有 gram 倒排表的交集
+        int[] candidates = current.match(query);
+        if(candidates.length <= from){
+            return Collections.emptyList();
+        }
+        // 2. 三个字以上的关键字，两字 gram 都命中不代表连续包含，逐个校验去掉误命中
+        int[] docs = candidates;
+        if(query.length() > 2){
+            docs = new int[candidates.length];
+            int n = 0;
+            for (int doc : candidates) {
+                if(current.contains(doc, query)){
+                    docs[n++] = doc;
+                }
+            }
+            if(n <= from){
+                return Collections.emptyList();
+            }
+            docs = Arrays.copyOf(docs, n);
+        }
+        // 3. 计算相关度，按相关度降序排序，相关度相同时按销量降序
+        long[] ranked = new long[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            // 高 32 位为相关度，低 32 位为文档号，升序排序后倒序遍历
+            ranked[i] = ((long) current.score(docs[i], query) << 32) | docs[i];
+        }
+        Arrays.sort(ranked);
+        List<Shop> result = new ArrayList<>(Math.min(end, docs.length) - from);
+        for (int i = from; i < end && i < ranked.length; i++) {
+            result.add(current.shops[(int) ranked[ranked.length - 1 - i]]);
+        }
+        return result;
+    }
+
+    /**
+     * 搜索框输入提示：名称或拼音首字母以 prefix 开头的店铺，按人气排序
+     */
+    public List<ShopSuggestion> suggest(String prefix) {
+        Snapshot current = snapshot;
+        if(current == null){
+            return Collections.emptyList();
+        }
+        return current.suggest.suggest(prefix);
+    }
+
+    /**
+     * 统一大小写、去掉空白和标点，只保留字母、数字和汉字
+     */
+    static String normalize(String text) {
+        if(text == null){
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(Character.isLetterOrDigit(c)){
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 切分 n-gram：单字和相邻两字
+     */
+    static Set<String> grams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            grams.add(text.substring(i, i + 1));
+            if(i + 1 < text.length()){
+                grams.add(text.substring(i, i + 2));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 查询用的 gram：只取相邻两字即可覆盖整个关键字，单字关键字取单字
+     */
+    static Set<String> queryGrams(String query) {
+        Set<String> grams = new LinkedHashSet<>();
+        if(query.length() == 1){
+            grams.add(query);
+            return grams;
+        }
+        for (int i = 0; i + 1 < query.length(); i++) {
+            grams.add(query.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    /**
+     * 一份不可变的索引
+     */
+    static final class Snapshot {
+        // 文档号 -> 店铺，文档号即数组下标
+        final Shop[] shops;
+        final String[] names;
+        final String[] areas;
+        final String[] addresses;
+        final Map<String, int[]> postings;
+        final ShopSuggestIndex suggest;
+
+        Snapshot(List<Shop> list) {
+            int n = list.size();
+            shops = list.toArray(new Shop[0]);
+            names = new String[n];
+            areas = new String[n];
+            addresses = new String[n];
+            // 1. 先用可变数组收集每个 gram 的文档号，文档号递增写入，天然有序
+            Map<String, IntList> builders = new HashMap<>();
+            for (int doc = 0; doc < n; doc++) {
+                names[doc] = normalize(shops[doc].getName());
+                areas[doc] = normalize(shops[doc].getArea());
+                addresses[doc] = normalize(shops[doc].getAddress());
+                Set<String> grams = grams(names[doc]);
+                grams.addAll(grams(areas[doc]));
+                grams.addAll(grams(addresses[doc]));
+                for (String gram : grams) {
+                    builders.computeIfAbsent(gram, k -> new IntList()).add(doc);
+                }
+            }
+            // 2. 压缩为定长 int 数组
+            postings = new HashMap<>(builders.size() * 4 / 3 + 1);
+            for (Map.Entry<String, IntList> entry : builders.entrySet()) {
+                postings.put(entry.getKey(), entry.getValue().toArray());
+            }
+            // 3. 前缀补全索引
+            suggest = new ShopSuggestIndex(list, SystemConstants.SUGGEST_SIZE);
+        }
+
+        int[] match(String query) {
+            // 1. 取出所有 gram 的倒排表，任一 gram 不存在则没有结果
+            Set<String> grams = queryGrams(query);
+            int[][] lists = new int[grams.size()][];
+            int k = 0;
+            for (String gram : grams) {
+                int[] list = postings.get(gram);
+                if(list == null){
+                    return new int[0];
+                }
+                lists[k++] = list;
+            }
+            // 2. 从最短的倒排表开始求交集
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+            int[] result = lists[0];
+            for (int i = 1; i < lists.length && result.length > 0; i++) {
+                result = intersect(result, lists[i]);
+            }
+            return result;
+        }
+
+        // 有序数组求交集，短数组在长数组中二分跳跃
+        private static int[] intersect(int[] small, int[] large) {
+            int[] out = new int[small.length];
+            int size = 0, lo = 0;
+            for (int doc : small) {
+                int pos = Arrays.binarySearch(large, lo, large.length, doc);
+                if(pos >= 0){
+                    out[size++] = doc;
+                    lo = pos + 1;
+                }else{
+                    lo = -pos - 1;
+                }
+                if(lo >= large.length){
+                    break;
+                }
+            }
+            return Arrays.copyOf(out, size);
+        }
+
+        /**
+         * 相关度：字段完整包含关键字得该字段权重，名称以关键字开头额外加分，再叠加销量（截断）
+         */
+        boolean contains(int doc, String query) {
+            return names[doc].contains(query) || areas[doc].contains(query) || addresses[doc].contains(query);
+        }
+
+        int score(int doc, String query) {
+            int score = 0;
+            if(names[doc].contains(query)){
+                score += NAME_WEIGHT;
+                if(names[doc].startsWith(query)){
+                    score += NAME_WEIGHT;
+                }
+            }
+            if(areas[doc].contains(query)){
+                score += AREA_WEIGHT;
+            }
+            if(addresses[doc].contains(query)){
+                score += ADDRESS_WEIGHT;
+            }
+            Integer sold = shops[doc].getSold();
+            // 相关度占高位，销量只在相关度相同时起作用
+            return (score << 16) | Math.min(sold == null ? 0 : sold, 0xFFFF);
+        }
+    }
+
+    /**
+     * 追加写入的 int 数组
+     */
+    static final class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int value) {
+            if(size == data.length){
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopSuggestion;
+import com.hmdp.entity.Shop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 店铺名称前缀补全，不可变
+ * 1. 每个店铺生成两个 key：规范化后的名称、名称的拼音首字母，所有 key 排成有序数组
+ * 2. 前缀查询二分定位有序数组中的区间，区间内按人气（销量 + 评论数）取前 k 个
+ * 3. 命中店铺很多的短前缀预先算好前 k 个，查询时直接返回
+ */
+public class ShopSuggestIndex {
+
+    // 预计算前 k 个的前缀最大长度
+    private static final int PRECOMPUTED_PREFIX_LENGTH = 2;
+    // 区间内 key 数超过该值的前缀才预计算
+    private static final int HEAVY_RANGE = 64;
+
+    private final Shop[] shops;
+    private final long[] popularity;
+    // 有序的 key，以及每个 key 对应的店铺下标
+    private final String[] keys;
+    private final int[] docs;
+    private final int topK;
+    private final Map<String, int[]> precomputed = new HashMap<>();
+
+    public ShopSuggestIndex(List<Shop> list, int topK) {
+        this.topK = topK;
+        shops = list.toArray(new Shop[0]);
+        popularity = new long[shops.length];
+        // 1. 生成 key
+        List<String> keyList = new ArrayList<>(shops.length * 2);
+        List<Integer> docList = new ArrayList<>(shops.length * 2);
+        for (int doc = 0; doc < shops.length; doc++) {
+            Shop shop = shops[doc];
+            popularity[doc] = (shop.getSold() == null ? 0L : shop.getSold())
+                    + (shop.getComments() == null ? 0L : shop.getComments());
+            Set<String> shopKeys = new LinkedHashSet<>();
+            shopKeys.add(ShopSearchIndex.normalize(shop.getName()));
+            shopKeys.add(PinyinUtils.initials(shop.getName()));
+            for (String key : shopKeys) {
+                if(!key.isEmpty()){
+                    keyList.add(key);
+                    docList.add(doc);
+                }
+            }
+        }
+        // 2. 按 key 排序
+        int[] order = IntStream.range(0, keyList.size()).boxed()
+                .sorted(Comparator.comparing(keyList::get))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        keys = new String[order.length];
+        docs = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            keys[i] = keyList.get(order[i]);
+            docs[i] = docList.get(order[i]);
+        }
+        // 3. 预计算热门短前缀的前 k 个
+        for (int i = 0; i < keys.length; i++) {
+            for (int len = 1; len <= PRECOMPUTED_PREFIX_LENGTH && len <= keys[i].length(); len++) {
+                String prefix = keys[i].substring(0, len);
+                if(precomputed.containsKey(prefix)){
+                    continue;
+                }
+                int lo = lowerBound(prefix), hi = upperBound(prefix);
+                if(hi - lo > HEAVY_RANGE){
+                    precomputed.put(prefix, top(lo, hi));
+                }
+            }
+        }
+    }
+
+    /**
+     * 查询以 prefix 开头（名称或拼音首字母）的店铺，按人气降序
+     */
+    public List<ShopSuggestion> suggest(String prefix) {
+        String key = ShopSearchIndex.normalize(prefix);
+        if(key.isEmpty()){
+            return Collections.emptyList();
+        }
+        int[] top = precomputed.get(key);
+        if(top == null){
+            top = top(lowerBound(key), upperBound(key));
+        }
+        return Arrays.stream(top)
+                .mapToObj(doc -> new ShopSuggestion(shops[doc].getId(), shops[doc].getName(), shops[doc].getArea()))
+                .collect(Collectors.toList());
+    }
+
+    // 区间 [lo, hi) 内人气最高的 k 个店铺，同一个店铺可能通过名称和首字母出现两次，需要去重
+    private int[] top(int lo, int hi) {
+        return IntStream.range(lo, hi)
+                .map(i -> docs[i])
+                .distinct()
+                .boxed()
+                .sorted((a, b) -> popularity[a] != popularity[b]
+                        ? Long.compare(popularity[b], popularity[a])
+                        : Integer.compare(a, b))
+                .limit(topK)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // 第一个不小于 prefix 的 key
+    private int lowerBound(String prefix) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(keys[mid].compareTo(prefix) < 0){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // 第一个不以 prefix 开头且大于 prefix 的 key
+    private int upperBound(String prefix) {
+        int lo = lowerBound(prefix), hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(keys[mid].startsWith(prefix)){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -5,4 +5,17 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    // 附近店铺的查询半径，单位：米
+    public static final double NEARBY_RADIUS = 5000;
+    // 附近店铺允许查询的最大页码，避免按页码分配过大的 top-k 堆
+    public static final int NEARBY_MAX_PAGE = 1000;
+    // 附近搜索允许的最大半径，单位：米
+    public static final double NEARBY_MAX_RADIUS = 20000;
+    // 搜索框输入提示的条数
+    public static final int SUGGEST_SIZE = 10;
+    // 地图视野查询最多返回的聚合格子数
+    public static final int VIEWPORT_MAX_CELLS = 256;
+    // 地图缩放级别范围
+    public static final int VIEWPORT_MIN_ZOOM = 1;
+    public static final int VIEWPORT_MAX_ZOOM = 20;
 }
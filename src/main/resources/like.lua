@@ -0,0 +1,34 @@
+-- 参数列表
+-- KEYS[1] 点赞位图分片 key，KEYS[2] 最早点赞用户的有界 zset key，KEYS[3] 点赞数计数器 key
+-- KEYS[4] 尚未迁移的旧点赞 zset key
+-- ARGV[1] 用户在分片内的偏移量，ARGV[2] 用户id，ARGV[3] 点赞时间戳，ARGV[4] zset 最多保留的用户数
+-- ARGV[5] 是否还需要兼容旧 zset（1 是 0 否），迁移完成后不再访问旧 zset
+local bitmapKey = KEYS[1]
+local topKey = KEYS[2]
+local countKey = KEYS[3]
+local legacyKey = KEYS[4]
+local legacy = ARGV[5] == '1'
+
+-- 1. 判断用户是否已经点赞，位图中没有时再查旧 zset
+if(redis.call('getbit', bitmapKey, ARGV[1]) == 0 and not (legacy and redis.call('zscore', legacyKey, ARGV[2]))) then
+    -- 2. 未点赞：置位，并记录到有界 zset 中
+    redis.call('setbit', bitmapKey, ARGV[1], 1)
+    redis.call('zadd', topKey, ARGV[3], ARGV[2])
+    -- 2.1 只保留最早点赞的 N 个用户
+    redis.call('zremrangebyrank', topKey, ARGV[4], -1)
+    -- 2.2 计数器随 blog 卡片缓存一起创建，不存在时不处理
+    if(redis.call('exists', countKey) == 1) then
+        redis.call('incrby', countKey, 1)
+    end
+    return 1
+end
+-- 3. 已点赞：取消点赞，同时清除旧 zset 中的记录
+redis.call('setbit', bitmapKey, ARGV[1], 0)
+redis.call('zrem', topKey, ARGV[2])
+if(legacy) then
+    redis.call('zrem', legacyKey, ARGV[2])
+end
+if(redis.call('exists', countKey) == 1) then
+    redis.call('incrby', countKey, -1)
+end
+return 0
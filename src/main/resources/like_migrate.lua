@@ -0,0 +1,27 @@
+-- 参数列表
+-- KEYS[1] 旧点赞 zset key，KEYS[2] 最早点赞用户的有界 zset key，KEYS[3..] 每个用户所在的位图分片 key
+-- ARGV[1] zset 最多保留的用户数，ARGV[2] 是否写入有界 zset（1 是 0 否）
+-- 之后每个用户三个参数：分片内的偏移量、用户id、点赞时间戳，顺序与 KEYS[3..] 一致
+local legacyKey = KEYS[1]
+local topKey = KEYS[2]
+local withTop = ARGV[2] == '1'
+
+local migrated = 0
+for i = 3, #KEYS do
+    local base = 2 + (i - 3) * 3
+    local userId = ARGV[base + 2]
+    -- 1. 读取旧数据后用户可能已经取消点赞，只迁移仍在旧 zset 中的用户
+    if(redis.call('zscore', legacyKey, userId)) then
+        redis.call('setbit', KEYS[i], ARGV[base + 1], 1)
+        if(withTop) then
+            redis.call('zadd', topKey, ARGV[base + 3], userId)
+        end
+        -- 2. 迁移后从旧 zset 中删除，旧 zset 为空时 Redis 自动删除 key
+        redis.call('zrem', legacyKey, userId)
+        migrated = migrated + 1
+    end
+end
+if(withTop) then
+    redis.call('zremrangebyrank', topKey, ARGV[1], -1)
+end
+return migrated
@@ -0,0 +1,28 @@
+-- 领取已到期的订单超时任务
+-- 任务按截止时间所在的分钟放入 list：order:timeout:{分钟}，游标记录下一个待处理的分钟
+-- KEYS[1] 游标key
+-- ARGV[1] 最后一个已到期的分钟，ARGV[2] 最多领取的任务数，ARGV[3] list key 前缀，ARGV[4] 游标不存在时的起始分钟
+-- 返回逗号分隔的订单id，没有到期任务时返回空字符串
+local due = tonumber(ARGV[1])
+local limit = tonumber(ARGV[2])
+local prefix = ARGV[3]
+local cursor = tonumber(redis.call('get', KEYS[1]) or ARGV[4])
+local result = {}
+-- 每次最多向前推进的分钟数，避免游标落后很多时脚本执行过久
+local steps = 0
+while cursor <= due and #result < limit and steps < 10000 do
+    local key = prefix .. cursor
+    local ids = redis.call('lrange', key, 0, limit - #result - 1)
+    for i = 1, #ids do
+        result[#result + 1] = ids[i]
+    end
+    redis.call('ltrim', key, #ids, -1)
+    if(redis.call('llen', key) > 0) then
+        -- 这一分钟的任务还没领完，下次继续
+        break
+    end
+    cursor = cursor + 1
+    steps = steps + 1
+end
+redis.call('set', KEYS[1], cursor)
+return table.concat(result, ',')
@@ -0,0 +1,29 @@
+-- 令牌桶限流
+-- KEYS[1] 令牌桶 hash：tokens 剩余令牌，ts 上次补充时间（毫秒）
+-- ARGV[1] 容量，ARGV[2] 每毫秒补充的令牌数，ARGV[3] 当前时间（毫秒）
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local now = tonumber(ARGV[3])
+local bucket = redis.call('hmget', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+if(tokens == nil) then
+    -- 新的令牌桶，装满
+    tokens = capacity
+    ts = now
+end
+-- 1. 按时间补充令牌
+if(now > ts) then
+    tokens = math.min(capacity, tokens + (now - ts) * rate)
+    ts = now
+end
+-- 2. 令牌不足，拒绝
+local allowed = 0
+if(tokens >= 1) then
+    tokens = tokens - 1
+    allowed = 1
+end
+-- 3. 保存，令牌桶补满之后就可以过期
+redis.call('hset', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(ts))
+redis.call('pexpire', KEYS[1], math.ceil(capacity / rate) + 1000)
+return allowed
@@ -5,37 +5,55 @@ local voucherId = ARGV[1]
 local userId = ARGV[2]
 -- 1.3 订单id
 local orderId = ARGV[3]
+-- 1.4 当前时间（毫秒）
+local now = tonumber(ARGV[4])
+-- 1.5 下单结果记录的有效期（秒）
+local statusTtl = ARGV[5]
+-- 1.6 下单队列允许积压的最大消息数
+local maxBacklog = tonumber(ARGV[6])
 
 -- 2 数据key
--- 2.1 库存key
+-- 2.1 库存key，hash：stock 库存，begin 开始时间，end 结束时间（毫秒）
 local stockKey = 'seckill:stock:' .. voucherId
 -- 2.2 订单key
 local orderKey = 'seckill:order' .. voucherId
+-- 2.3 下单结果key，hash：userId 下单用户，state 处理状态
+local statusKey = 'order:status:' .. orderId
 
 -- 3 脚本业务
--- 3.1 判断库存是否充足
-if(tonumber(redis.call('get', stockKey)) <= 0) then
-    -- 3.2 库存不足，返回 1
+local voucher = redis.call('hmget', stockKey, 'stock', 'begin', 'end')
+local stock, beginTime, endTime = tonumber(voucher[1]), tonumber(voucher[2]), tonumber(voucher[3])
+-- 3.1 判断秒杀是否开始、是否结束
+if(beginTime and now < beginTime) then
+    -- 尚未开始，返回 3
+    return 3
+end
+if(endTime and now > endTime) then
+    -- 已经结束，返回 4
+    return 4
+end
+-- 3.2 判断库存是否充足
+if(not stock or stock <= 0) then
+    -- 库存不足，返回 1
     return 1
 end
--- 3.2 判断用户是否下单过该优惠券
+-- 3.3 判断用户是否下单过该优惠券
 if(redis.call('sismember', orderKey, userId) == 1) then
-    -- 3.3 是，说明是重复下单，返回2
+    -- 是，说明是重复下单，返回2
     return 2
 end
--- 3.4 扣库存
-redis.call('incrby', stockKey, -1)
--- 3.5 下单（保存用户）
+-- 3.4 判断下单队列是否积压过多，已确认的消息会被删除，队列长度就是积压量
+if(redis.call('xlen', 'stream.orders') >= maxBacklog) then
+    -- 积压过多，返回 5
+    return 5
+end
+-- 3.5 扣库存
+redis.call('hincrby', stockKey, 'stock', -1)
+-- 3.6 下单（保存用户）
 redis.call('sadd', orderKey, userId)
--- 3.6 发送消息到队列中 XADD stream.orders * k1 v1 k2 v2
+-- 3.7 发送消息到队列中 XADD stream.orders * k1 v1 k2 v2
 redis.call('xadd', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+-- 3.8 记录下单结果为排队中，由消费者更新
+redis.call('hset', statusKey, 'userId', userId, 'state', 'queued')
+redis.call('expire', statusKey, statusTtl)
 return 0
-
-
-
-
-
-
-
-
-
@@ -0,0 +1,18 @@
+-- 秒杀下单最终失败后的补偿，只有用户仍在订单集合中时才执行，重复调用不会多加库存
+-- KEYS[1] 库存key seckill:stock:{voucherId}
+-- KEYS[2] 订单key seckill:order{voucherId}
+-- ARGV[1] 用户id，ARGV[2] 是否归还库存 1/0
+if(redis.call('srem', KEYS[2], ARGV[1]) == 0) then
+    return 0
+end
+if(ARGV[2] == '1') then
+    local type = redis.call('type', KEYS[1]).ok
+    if(type == 'hash') then
+        redis.call('hincrby', KEYS[1], 'stock', 1)
+    elseif(type == 'string') then
+        -- 尚未转换的旧格式库存
+        redis.call('incrby', KEYS[1], 1)
+    end
+    -- 库存 key 不存在时不创建，否则会生成没有开始、结束时间的库存，由预热从数据库重新写入
+end
+return 1
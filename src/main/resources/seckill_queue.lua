@@ -0,0 +1,41 @@
+-- 秒杀排队
+-- 用户按到达顺序领取序号，序号小于放行上限的用户获得抢购资格
+-- 放行上限 = max(已放行的上限, 已下单人数 + 系数 * 剩余库存)，只增不减，超时取消归还库存后会继续放行
+-- KEYS[1] 库存 hash（放行上限记录在 admit 字段），KEYS[2] 订单集合，KEYS[3] 排队 hash（userId -> 序号）
+-- ARGV[1] userId，ARGV[2] 1 排队 0 只查询，ARGV[3] 当前时间（毫秒），ARGV[4] 放行系数
+-- 返回 "状态:前面还有多少人"：0 已放行，1 排队中，2 已售罄，3 秒杀不存在或已结束，4 未排队
+local info = redis.call('hmget', KEYS[1], 'stock', 'end', 'admit')
+if(not info[1]) then
+    return '3:0'
+end
+if(info[2] and tonumber(info[2]) < tonumber(ARGV[3])) then
+    return '3:0'
+end
+-- 1. 领取序号
+local seq = redis.call('hget', KEYS[3], ARGV[1])
+if(not seq) then
+    if(ARGV[2] ~= '1') then
+        return '4:0'
+    end
+    seq = redis.call('hlen', KEYS[3])
+    redis.call('hset', KEYS[3], ARGV[1], seq)
+    if(info[2]) then
+        -- 秒杀结束一小时后清理
+        redis.call('pexpireat', KEYS[3], tonumber(info[2]) + 3600000)
+    end
+end
+seq = tonumber(seq)
+-- 2. 计算放行上限
+local stock = tonumber(info[1])
+local cap = math.max(tonumber(info[3] or '0'), redis.call('scard', KEYS[2]) + tonumber(ARGV[4]) * stock)
+if(cap ~= tonumber(info[3])) then
+    redis.call('hset', KEYS[1], 'admit', cap)
+end
+-- 3. 判断是否放行
+if(seq < cap) then
+    return '0:0'
+end
+if(stock <= 0) then
+    return string.format('2:%d', seq - cap + 1)
+end
+return string.format('1:%d', seq - cap + 1)
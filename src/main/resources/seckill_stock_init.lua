@@ -0,0 +1,15 @@
+-- 初始化秒杀券的库存 hash，已存在的库存不覆盖，开始、结束时间总是更新
+-- KEYS[1] 库存key seckill:stock:{voucherId}
+-- ARGV[1] 库存，ARGV[2] 开始时间，ARGV[3] 结束时间（毫秒）
+local stockKey = KEYS[1]
+-- 1. 旧格式的库存为 string，转换为 hash 并保留剩余库存
+if(redis.call('type', stockKey).ok == 'string') then
+    local stock = redis.call('get', stockKey)
+    redis.call('del', stockKey)
+    redis.call('hset', stockKey, 'stock', stock)
+end
+-- 2. 写入库存和时间
+redis.call('hsetnx', stockKey, 'stock', ARGV[1])
+redis.call('hset', stockKey, 'begin', ARGV[2])
+redis.call('hset', stockKey, 'end', ARGV[3])
+return 0
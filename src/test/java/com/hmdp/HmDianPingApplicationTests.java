@@ -5,26 +5,24 @@ import com.hmdp.entity.Shop;
 import com.hmdp.service.impl.ShopServiceImpl;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.ShopGeoSync;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.data.geo.Point;
-import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 import javax.annotation.Resource;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
-import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 
+// 需要真实的 MySQL 和 Redis，通过 mvn test -Pintegration 运行
+@EnabledIfSystemProperty(named = "integration", matches = "true")
 @SpringBootTest
 class HmDianPingApplicationTests {
 
@@ -40,6 +38,9 @@ class HmDianPingApplicationTests {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private ShopGeoSync shopGeoSync;
+
     // 线程池
     private ExecutorService es = Executors.newFixedThreadPool(500);
 
@@ -74,27 +75,8 @@ class HmDianPingApplicationTests {
 
     @Test
     void loadShopData(){
-        // 1. 查询店铺信息
-        List<Shop> list = shopService.list();
-        // 2. 按照 typeId 将店铺分组
-        Map<Long, List<Shop>> map = list.stream().collect(Collectors.groupingBy(Shop::getTypeId));
-        // 3. 分批完成后写入 Redis
-        for (Map.Entry<Long, List<Shop>> entry : map.entrySet()) {
-            // 3.1 获取类型 id
-            Long typeId = entry.getKey();
-            String key = SHOP_GEO_KEY + typeId;
-            // 3.2 获取同类型的店铺的集合
-            List<Shop> value = entry.getValue();
-            List<RedisGeoCommands.GeoLocation<String>> locations = new ArrayList<>(value.size());
-            // 3.3 将 List<Shop> 转换为 List<GeoLocation>
-            for (Shop shop : value) {
-                locations.add(new RedisGeoCommands.GeoLocation<>(
-                        shop.getId().toString(),
-                        new Point(shop.getX(), shop.getY())
-                ));
-            }
-            // 3.4 写入 redis // GEOADD key 经度 纬度 member
-            stringRedisTemplate.opsForGeo().add(key, locations);
-        }
+        // 按照 typeId 分组，分批 pipeline 写入 Redis GEO
+        int count = shopGeoSync.loadAll();
+        assertEquals(shopService.count(), count);
     }
 }
@@ -0,0 +1,41 @@
+package com.hmdp;
+
+import com.hmdp.utils.HotKeyCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotKeyCacheTest {
+
+    @Test
+    void promotesAndDemotesHotKeys() {
+        HotKeyCache cache = new HotKeyCache();
+        for (int i = 0; i < 600; i++) {
+            cache.record("cache:shop:1");
+        }
+        for (int i = 0; i < 10; i++) {
+            cache.record("cache:shop:" + (i + 100));
+        }
+        // 窗口结束前还不是热点
+        assertFalse(cache.record("cache:shop:1"));
+
+        cache.rotate();
+        assertTrue(cache.record("cache:shop:1"));
+        assertEquals("cache:shop:1", cache.topKeys().get(0).getKey());
+        assertEquals(1, cache.topKeys().size());
+        cache.putLocal("cache:shop:1", "{}");
+        assertEquals("{}", cache.getLocal("cache:shop:1"));
+        // 非热点 key 不写入本地缓存
+        cache.putLocal("cache:shop:100", "{}");
+        assertNull(cache.getLocal("cache:shop:100"));
+
+        // 不再访问后计数逐窗口减半，低于阈值一半时降级
+        cache.rotate();
+        cache.rotate();
+        assertFalse(cache.record("cache:shop:1"));
+        assertNull(cache.getLocal("cache:shop:1"));
+    }
+}
@@ -3,6 +3,7 @@ package com.hmdp;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -11,6 +12,8 @@ import javax.annotation.Resource;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
+// 需要真实的 MySQL 和 Redis，通过 mvn test -Pintegration 运行
+@EnabledIfSystemProperty(named = "integration", matches = "true")
 @SpringBootTest
 public class RedissonTest {
     @Resource
@@ -0,0 +1,222 @@
+package com.hmdp;
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.SeckillQueueStatus;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Voucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.OrderStatusStore;
+import com.hmdp.utils.SeckillOrderStream;
+import com.hmdp.utils.SeckillStockStore;
+import com.hmdp.utils.SeckillWaitingRoom;
+import com.hmdp.utils.UserHolder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_QUEUE_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 秒杀压测：N 个模拟用户并发排队、下单，等待 stream 消费者落库后检查超卖
+ * 需要本地 Redis，数据库使用内存 H2，运行方式：
+ * mvn test -Pbench -Dbench.users=5000 -Dbench.stock=1000 -Dbench.threads=200
+ * 报告吞吐量、下单延迟 p50/p99/p999、下单到落库的延迟
+ */
+@SpringBootTest
+@ActiveProfiles("bench")
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class SeckillBenchmarkTest {
+
+    private static final int USERS = Integer.getInteger("bench.users", 5000);
+    private static final int STOCK = Integer.getInteger("bench.stock", 1000);
+    private static final int THREADS = Integer.getInteger("bench.threads", 200);
+    // 等待全部订单落库的最长时间
+    private static final long DRAIN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("bench.drain-seconds", 120));
+
+    @Resource
+    private IVoucherService voucherService;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private SeckillStockStore seckillStockStore;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Test
+    void seckill() throws InterruptedException {
+        Long voucherId = prepareVoucher();
+
+        // 1. 所有用户同时开始排队、下单
+        long[] latencies = new long[USERS];
+        AtomicLongArray acceptedAt = new AtomicLongArray(USERS);
+        Map<Long, Integer> orders = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+        AtomicInteger notAdmitted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(USERS);
+        for (int i = 0; i < USERS; i++) {
+            int user = i;
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    UserDTO userDTO = new UserDTO();
+                    userDTO.setId(1_000_000L + user);
+                    UserHolder.saveUser(userDTO);
+                    // 1.1 排队，未放行的用户不会下单
+                    SeckillQueueStatus queue = (SeckillQueueStatus) voucherOrderService.joinSeckillQueue(voucherId).getData();
+                    if(queue.getStatus() != SeckillWaitingRoom.ADMITTED){
+                        notAdmitted.incrementAndGet();
+                        latencies[user] = -1;
+                        return;
+                    }
+                    // 1.2 下单
+                    long begin = System.nanoTime();
+                    Result result = voucherOrderService.seckillVoucher(voucherId, queue.getToken());
+                    long end = System.nanoTime();
+                    latencies[user] = end - begin;
+                    if(Boolean.TRUE.equals(result.getSuccess())){
+                        acceptedAt.set(user, end);
+                        orders.put((Long) result.getData(), user);
+                    }else{
+                        failures.computeIfAbsent(result.getErrorMsg(), k -> new AtomicInteger()).incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    failures.computeIfAbsent(e.getClass().getSimpleName(), k -> new AtomicInteger()).incrementAndGet();
+                } finally {
+                    UserHolder.removeUser();
+                    finish.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        finish.await();
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        // 2. 等待 stream 消费者处理完所有订单，记录每个订单从下单成功到落库的延迟
+        List<Long> persistLags = waitForPersistence(orders, acceptedAt);
+
+        // 3. 报告
+        long[] sorted = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+        System.out.println("========== 秒杀压测 ==========");
+        System.out.printf("用户 %d，库存 %d，并发线程 %d%n", USERS, STOCK, THREADS);
+        System.out.printf("未放行 %d，下单请求 %d，成功 %d，失败 %s%n", notAdmitted.get(), sorted.length, orders.size(), failures);
+        System.out.printf("吞吐量 %.0f 次/秒（下单请求 / 总耗时 %d ms）%n",
+                sorted.length / (elapsed / 1e9), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        System.out.printf("下单延迟 p50 %.2f ms，p99 %.2f ms，p999 %.2f ms，max %.2f ms%n",
+                percentile(sorted, 0.5) / 1e6, percentile(sorted, 0.99) / 1e6,
+                percentile(sorted, 0.999) / 1e6, percentile(sorted, 1.0) / 1e6);
+        long[] lags = persistLags.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("落库延迟 p50 %.0f ms，p99 %.0f ms，max %.0f ms%n",
+                percentile(lags, 0.5) / 1e6, percentile(lags, 0.99) / 1e6, percentile(lags, 1.0) / 1e6);
+
+        // 4. 超卖和一致性检查
+        int sold = orders.size();
+        assertTrue(sold <= STOCK, "超卖：成功 " + sold + "，库存 " + STOCK);
+        assertEquals(Math.min(STOCK, USERS), sold, "库存未卖完");
+        assertEquals(sold, lags.length, "有订单没有落库");
+        List<VoucherOrder> saved = voucherOrderService.query().eq("voucher_id", voucherId).list();
+        assertEquals(sold, saved.size(), "数据库订单数与下单成功数不一致");
+        assertEquals(sold, saved.stream().map(VoucherOrder::getUserId).distinct().count(), "一人多单");
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        assertEquals(STOCK - sold, voucher.getStock().intValue(), "数据库库存不一致");
+        Integer redisStock = seckillStockStore.queryStocks(Collections.singletonList(voucherId)).get(0);
+        assertEquals(STOCK - sold, redisStock.intValue(), "Redis 库存不一致");
+    }
+
+    // 创建秒杀券，清理上次压测留在 Redis 中的数据（H2 每次都是新库，id 会重复）
+    private Long prepareVoucher() {
+        stringRedisTemplate.delete(Arrays.asList(SeckillOrderStream.STREAM_KEY, SeckillOrderStream.DLQ_KEY,
+                SECKILL_STOCK_KEY + 1, SECKILL_ORDER_KEY + 1, SECKILL_QUEUE_KEY + 1));
+        stringRedisTemplate.execute((RedisCallback<String>) connection -> ((StringRedisConnection) connection)
+                .xGroupCreate(SeckillOrderStream.STREAM_KEY, ReadOffset.from("0"), SeckillOrderStream.GROUP, true));
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("压测秒杀券");
+        voucher.setPayValue(100L);
+        voucher.setActualValue(1000L);
+        voucher.setType(1);
+        voucher.setStatus(1);
+        voucher.setStock(STOCK);
+        voucher.setBeginTime(LocalDateTime.now().minusMinutes(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        voucherService.addSeckillVoucher(voucher);
+        assertEquals(1L, voucher.getId().longValue(), "压测需要空的数据库");
+        return voucher.getId();
+    }
+
+    // 每 10ms 用一个 pipeline 查询未落库订单的下单结果，返回每个订单的落库延迟（纳秒）
+    private List<Long> waitForPersistence(Map<Long, Integer> orders, AtomicLongArray acceptedAt) throws InterruptedException {
+        List<Long> pending = new ArrayList<>(orders.keySet());
+        List<Long> lags = new ArrayList<>(pending.size());
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+            List<Long> batch = pending;
+            List<Object> states = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long orderId : batch) {
+                    conn.hGet(ORDER_STATUS_KEY + orderId, OrderStatusStore.STATE_FIELD);
+                }
+                return null;
+            });
+            long now = System.nanoTime();
+            List<Long> next = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Object state = states.get(i);
+                if(OrderStatusStore.QUEUED.equals(state)){
+                    next.add(batch.get(i));
+                }else if(OrderStatusStore.CREATED.equals(state)){
+                    lags.add(now - acceptedAt.get(orders.get(batch.get(i))));
+                }
+            }
+            pending = next;
+            Thread.sleep(10);
+        }
+        return lags;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if(sorted.length == 0){
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,42 @@
+package com.hmdp;
+
+import com.hmdp.utils.SeckillWaitingRoom;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeckillWaitingRoomTest {
+
+    @Test
+    void verifiesSignedTokens() {
+        SeckillWaitingRoom room = new SeckillWaitingRoom(null);
+        ReflectionTestUtils.setField(room, "secret", "test-secret");
+        String token = room.sign(10L, 1L);
+        assertTrue(room.verify(token, 10L, 1L));
+        // 其他用户、其他秒杀券不能使用
+        assertFalse(room.verify(token, 10L, 2L));
+        assertFalse(room.verify(token, 11L, 1L));
+        // 篡改过期时间或签名
+        long expireAt = Long.parseLong(token.substring(0, token.indexOf('.')));
+        assertFalse(room.verify((expireAt + 60000) + token.substring(token.indexOf('.')), 10L, 1L));
+        char last = token.charAt(token.length() - 1);
+        assertFalse(room.verify(token.substring(0, token.length() - 1) + (last == '0' ? '1' : '0'), 10L, 1L));
+        // 已过期、格式错误
+        assertFalse(room.verify("1." + token.substring(token.indexOf('.') + 1), 10L, 1L));
+        assertFalse(room.verify("abc", 10L, 1L));
+        assertFalse(room.verify(null, 10L, 1L));
+        // 其他密钥签发的凭证不能使用
+        ReflectionTestUtils.setField(room, "secret", "other-secret");
+        assertFalse(room.verify(token, 10L, 1L));
+    }
+
+    @Test
+    void refusesToStartWithoutSecret() {
+        SeckillWaitingRoom room = new SeckillWaitingRoom(null);
+        ReflectionTestUtils.setField(room, "enabled", true);
+        assertThrows(IllegalStateException.class, () -> ReflectionTestUtils.invokeMethod(room, "init"));
+    }
+}
@@ -0,0 +1,150 @@
+package com.hmdp;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.ShopGeoIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShopGeoIndexTest {
+
+    private static final double EARTH_RADIUS = 6372797.560856;
+
+    // 与 Redis GEODIST 相同的 haversine 公式
+    private static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1), lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private static List<Shop> randomShops(int n, long seed) {
+        Random random = new Random(seed);
+        List<Shop> shops = new ArrayList<>(n);
+        for (long i = 1; i <= n; i++) {
+            shops.add(new Shop().setId(i).setTypeId(i % 3 + 1).setName("shop" + i)
+                    .setX(120.1 + random.nextDouble() * 0.1)
+                    .setY(30.2 + random.nextDouble() * 0.1)
+                    .setScore(10 + random.nextInt(41))
+                    .setSold(random.nextInt(5000))
+                    .setAvgPrice(20L + random.nextInt(300)));
+        }
+        return shops;
+    }
+
+    @Test
+    void nearestMatchesBruteForce() {
+        List<Shop> shops = randomShops(3000, 7);
+        ShopGeoIndex index = new ShopGeoIndex(null);
+        index.reload(shops);
+
+        Random random = new Random(11);
+        for (int q = 0; q < 200; q++) {
+            double x = 120.1 + random.nextDouble() * 0.1;
+            double y = 30.2 + random.nextDouble() * 0.1;
+            long typeId = q % 3 + 1;
+            // 暴力计算期望结果
+            List<Shop> expected = shops.stream()
+                    .filter(shop -> shop.getTypeId() == typeId)
+                    .filter(shop -> distance(x, y, shop.getX(), shop.getY()) <= 5000)
+                    .sorted(Comparator.comparingDouble(shop -> distance(x, y, shop.getX(), shop.getY())))
+                    .limit(50)
+                    .skip(45)
+                    .collect(Collectors.toList());
+
+            List<Shop> actual = index.nearest(typeId, x, y, 5000, 45, 50);
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getId(), actual.get(i).getId());
+                assertEquals(distance(x, y, expected.get(i).getX(), expected.get(i).getY()),
+                        actual.get(i).getDistance(), 0.01);
+            }
+        }
+    }
+
+    @Test
+    void searchMatchesBruteForce() {
+        List<Shop> shops = randomShops(3000, 5);
+        ShopGeoIndex index = new ShopGeoIndex(null);
+        index.reload(shops);
+
+        Random random = new Random(13);
+        for (int q = 0; q < 200; q++) {
+            double x = 120.1 + random.nextDouble() * 0.1;
+            double y = 30.2 + random.nextDouble() * 0.1;
+            long typeId = q % 3 + 1;
+            ShopGeoIndex.Sort sort = ShopGeoIndex.Sort.values()[q % 4];
+            double radius = 1000 + random.nextInt(4000);
+            long minPrice = 50, maxPrice = 200;
+            // 暴力计算期望结果：排序值相同时近的在前
+            Comparator<Shop> byDistance = Comparator.comparingDouble(shop -> distance(x, y, shop.getX(), shop.getY()));
+            Comparator<Shop> comparator;
+            switch (sort) {
+                case SCORE: comparator = Comparator.comparing(Shop::getScore).reversed().thenComparing(byDistance); break;
+                case SOLD: comparator = Comparator.comparing(Shop::getSold).reversed().thenComparing(byDistance); break;
+                case PRICE: comparator = Comparator.comparing(Shop::getAvgPrice).thenComparing(byDistance); break;
+                default: comparator = byDistance;
+            }
+            List<Long> expected = shops.stream()
+                    .filter(shop -> shop.getTypeId() == typeId)
+                    .filter(shop -> distance(x, y, shop.getX(), shop.getY()) <= radius)
+                    .filter(shop -> shop.getAvgPrice() >= minPrice && shop.getAvgPrice() <= maxPrice)
+                    .sorted(comparator)
+                    .limit(10)
+                    .skip(5)
+                    .map(Shop::getId)
+                    .collect(Collectors.toList());
+
+            List<Long> actual = index.search(typeId, x, y, radius, sort, minPrice, maxPrice, 5, 10).stream()
+                    .map(Shop::getId)
+                    .collect(Collectors.toList());
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void upsertMovesShopBetweenTypes() {
+        ShopGeoIndex index = new ShopGeoIndex(null);
+        index.reload(randomShops(100, 3));
+
+        Shop moved = new Shop().setId(1L).setTypeId(9L).setX(121.0).setY(31.0);
+        index.upsert(moved);
+
+        assertEquals(1L, index.nearest(9L, 121.0, 31.0, 10, 0, 5).get(0).getId());
+        assertEquals(0, index.nearest(2L, 121.0, 31.0, 10, 0, 5).size());
+        index.remove(1L);
+        assertEquals(0, index.nearest(9L, 121.0, 31.0, 10, 0, 5).size());
+    }
+
+    @Test
+    void nearestHandlesOutOfRangePages() {
+        List<Shop> shops = randomShops(300, 7);
+        ShopGeoIndex index = new ShopGeoIndex(null);
+        index.reload(shops);
+        // 页码为 0 或负数时没有结果
+        assertEquals(0, index.nearest(1L, 120.15, 30.25, 50000, -5, 0).size());
+        // 超过店铺数的页码不会按页码分配堆，结果为空
+        assertEquals(0, index.nearest(1L, 120.15, 30.25, 50000, 500_000_000, 500_000_005).size());
+        // 堆容量按店铺数截断，返回该类型半径内的全部店铺
+        assertEquals(100, index.nearest(1L, 120.15, 30.25, 50000, 0, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void searchHandlesOutOfRangePages() {
+        List<Shop> shops = randomShops(300, 7);
+        ShopGeoIndex index = new ShopGeoIndex(null);
+        index.reload(shops);
+        ShopGeoIndex.Sort sort = ShopGeoIndex.Sort.SCORE;
+        assertEquals(0, index.search(1L, 120.15, 30.25, 50000, sort, 0, 1000, -5, 0).size());
+        assertEquals(0, index.search(1L, 120.15, 30.25, 50000, sort, 0, 1000, 500_000_000, 500_000_005).size());
+        assertEquals(100, index.search(1L, 120.15, 30.25, 50000, sort, 0, 1000, 0, Integer.MAX_VALUE).size());
+    }
+}
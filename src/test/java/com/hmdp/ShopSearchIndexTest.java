@@ -0,0 +1,98 @@
+package com.hmdp;
+
+import com.hmdp.dto.ShopSuggestion;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.ShopSearchIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShopSearchIndexTest {
+
+    private static Shop shop(long id, String name, String area, String address, int sold) {
+        return new Shop().setId(id).setName(name).setArea(area).setAddress(address).setSold(sold);
+    }
+
+    private static List<Long> ids(List<Shop> shops) {
+        return shops.stream().map(Shop::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void searchRanksNameMatchesFirst() {
+        ShopSearchIndex index = new ShopSearchIndex(null);
+        index.load(Arrays.asList(
+                shop(1, "103茶餐厅", "大关", "金华路80号", 4215),
+                shop(2, "蔡馬洪涛烤肉·老北京铜锅涮羊肉", "拱宸桥", "上塘路1035号", 2160),
+                shop(3, "开乐迪KTV", "运河上街", "台州路2号茶餐厅楼上", 6079),
+                shop(4, "茶颜悦色", "茶餐厅商圈", "长沙路1号", 100),
+                shop(5, "Mamala(杭州远洋乐堤港店)", "远洋乐堤港", "丽水路58号", 12035)
+        ));
+
+        // 名称以关键字开头 > 名称包含 > 商圈包含 > 地址包含
+        assertEquals(Arrays.asList(1L, 4L, 3L), ids(index.search("茶餐厅", 0, 10)));
+        assertEquals(Arrays.asList(4L, 3L), ids(index.search("茶餐厅", 1, 10)));
+        // 单字、大小写、标点
+        assertEquals(Arrays.asList(4L, 1L), ids(index.search("茶", 0, 10)).subList(0, 2));
+        assertEquals(Arrays.asList(3L), ids(index.search("ktv", 0, 10)));
+        assertEquals(Arrays.asList(5L), ids(index.search("乐堤港 店", 0, 10)));
+        assertEquals(0, index.search("火锅", 0, 10).size());
+    }
+
+    @Test
+    void searchDropsDocsThatOnlyMatchAllGrams() {
+        ShopSearchIndex index = new ShopSearchIndex(null);
+        index.load(Arrays.asList(
+                shop(1, "茶餐厅", "大关", "金华路80号", 100),
+                // 包含 茶餐、餐厅 两个 gram，但不连续包含 茶餐厅
+                shop(2, "茶餐小馆", "湖滨", "餐厅路1号", 500)
+        ));
+
+        assertEquals(Arrays.asList(1L), ids(index.search("茶餐厅", 0, 10)));
+        assertEquals(0, index.search("茶餐厅", 1, 10).size());
+        assertEquals(0, index.search("茶餐厅", -10, 10).size());
+    }
+
+    @Test
+    void applyChangesMergesChangedShopsWithoutReload() {
+        // 没有 ShopMapper，合并时不能回查数据库
+        ShopSearchIndex index = new ShopSearchIndex(null);
+        index.load(Arrays.asList(
+                shop(1, "茶餐厅", "大关", "金华路80号", 100),
+                shop(2, "杭州酒家", "湖滨", "延安路1号", 500),
+                shop(3, "茶颜悦色", "湖滨", "长沙路1号", 300)
+        ));
+
+        index.upsert(shop(2, "茶香酒家", "湖滨", "延安路1号", 500));
+        index.remove(3L);
+        index.upsert(shop(4, "茶馆", "西湖", "北山路2号", 50));
+        index.applyChanges();
+
+        assertEquals(Arrays.asList(2L, 1L, 4L), ids(index.search("茶", 0, 10)));
+        assertEquals(0, index.search("杭州", 0, 10).size());
+        assertEquals(Arrays.asList(2L, 1L, 4L),
+                index.suggest("c").stream().map(ShopSuggestion::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void suggestMatchesNameAndPinyinInitials() {
+        ShopSearchIndex index = new ShopSearchIndex(null);
+        index.load(Arrays.asList(
+                shop(1, "茶餐厅", "大关", "", 100),
+                shop(2, "茶颜悦色", "湖滨", "", 500),
+                shop(3, "Cafe 101", "西湖", "", 300),
+                shop(4, "杭州酒家", "湖滨", "", 50)
+        ));
+
+        List<Long> byName = index.suggest("茶").stream().map(ShopSuggestion::getId).collect(Collectors.toList());
+        assertEquals(Arrays.asList(2L, 1L), byName);
+        // 名称前缀 c 和拼音首字母 cct、cyys 都命中，同一店铺只出现一次
+        List<Long> byInitial = index.suggest("C").stream().map(ShopSuggestion::getId).collect(Collectors.toList());
+        assertEquals(Arrays.asList(2L, 3L, 1L), byInitial);
+        assertEquals(Arrays.asList(4L), index.suggest("hzj").stream().map(ShopSuggestion::getId).collect(Collectors.toList()));
+        assertEquals(0, index.suggest("").size());
+    }
+}
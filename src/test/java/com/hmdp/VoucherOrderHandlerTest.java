@@ -0,0 +1,119 @@
+package com.hmdp;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.impl.VoucherOrderServiceImpl;
+import com.hmdp.utils.OrderStatusStore;
+import com.hmdp.utils.SeckillOrderStream;
+import com.hmdp.utils.SeckillStockStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 下单消息的消费逻辑：处理启动时积压的消息、异常消息的重试和死信
+ */
+class VoucherOrderHandlerTest {
+
+    private final IVoucherOrderService self = mock(IVoucherOrderService.class);
+    private final SeckillOrderStream seckillOrderStream = mock(SeckillOrderStream.class);
+    private final OrderStatusStore orderStatusStore = mock(OrderStatusStore.class);
+    private final SeckillStockStore seckillStockStore = mock(SeckillStockStore.class);
+    private final RLock lock = mock(RLock.class);
+    private final VoucherOrderServiceImpl service = new VoucherOrderServiceImpl();
+    private final MapRecord<String, Object, Object> record = orderRecord();
+
+    @BeforeEach
+    void setUp() {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getLock(anyString())).thenReturn(lock);
+        when(lock.tryLock()).thenReturn(true);
+        ReflectionTestUtils.setField(service, "self", self);
+        ReflectionTestUtils.setField(service, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(service, "seckillOrderStream", seckillOrderStream);
+        ReflectionTestUtils.setField(service, "orderStatusStore", orderStatusStore);
+        ReflectionTestUtils.setField(service, "seckillStockStore", seckillStockStore);
+        ReflectionTestUtils.setField(service, "maxDeliveries", 10L);
+    }
+
+    @Test
+    void createsBacklogOrdersWithoutPriorSeckillRequest() {
+        when(seckillOrderStream.deliveryCount(record.getId())).thenReturn(1L);
+        when(self.createVoucher(any(VoucherOrder.class))).thenReturn(IVoucherOrderService.ORDER_CREATED);
+
+        ReflectionTestUtils.invokeMethod(service, "handlePendingRecord", record);
+
+        verify(orderStatusStore).complete(eq(Collections.singletonMap(100L, OrderStatusStore.CREATED)),
+                eq(Collections.singletonMap(100L, 1L)),
+                eq(SeckillOrderStream.STREAM_KEY), eq(SeckillOrderStream.GROUP),
+                eq(Collections.singletonList(record.getId())));
+        verify(seckillOrderStream, never()).deadLetter(any(), anyLong());
+    }
+
+    @Test
+    void keepsFailedMessagePendingUntilMaxDeliveries() {
+        when(seckillOrderStream.deliveryCount(record.getId())).thenReturn(3L);
+        when(self.createVoucher(any(VoucherOrder.class))).thenThrow(new NullPointerException());
+
+        // 异常抛给重试循环，消息不确认，留在 pending-list 中
+        assertThrows(NullPointerException.class,
+                () -> ReflectionTestUtils.invokeMethod(service, "handlePendingRecord", record));
+        verify(orderStatusStore).complete(eq(Collections.emptyMap()), eq(Collections.emptyMap()), anyString(), anyString(),
+                eq(Collections.<RecordId>emptyList()));
+        verify(seckillOrderStream, never()).deadLetter(any(), anyLong());
+    }
+
+    @Test
+    void deadLettersMessageAfterMaxDeliveries() {
+        when(seckillOrderStream.deliveryCount(record.getId())).thenReturn(11L);
+
+        ReflectionTestUtils.invokeMethod(service, "handlePendingRecord", record);
+
+        verify(seckillOrderStream).deadLetter(record, 11L);
+        verify(self, never()).createVoucher(any(VoucherOrder.class));
+    }
+
+    @Test
+    void leavesMessagePendingWhenUserLockIsBusy() {
+        when(seckillOrderStream.deliveryCount(record.getId())).thenReturn(1L);
+        when(lock.tryLock()).thenReturn(false);
+
+        // 持有锁的通常是同一条消息，不补偿、不确认，留在 pending-list 中重试
+        assertThrows(IllegalStateException.class,
+                () -> ReflectionTestUtils.invokeMethod(service, "handlePendingRecord", record));
+        verify(seckillStockStore, never()).compensate(anyLong(), anyLong(), anyBoolean());
+        verify(self, never()).createVoucher(any(VoucherOrder.class));
+        verify(orderStatusStore).complete(eq(Collections.emptyMap()), eq(Collections.emptyMap()), anyString(), anyString(),
+                eq(Collections.<RecordId>emptyList()));
+    }
+
+    private static MapRecord<String, Object, Object> orderRecord() {
+        Map<Object, Object> values = new HashMap<>();
+        values.put("userId", "1");
+        values.put("voucherId", "10");
+        values.put("id", "100");
+        return StreamRecords.<String, Object, Object>mapBacked(values)
+                .withStreamKey(SeckillOrderStream.STREAM_KEY)
+                .withId(RecordId.of("1-0"));
+    }
+}